@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Encodes JSON values to CBOR (RFC 7049), the compact binary result encoding decoded by www/MASPluginCbor.js.
+ * Objects become maps with text keys, integral numbers become integers and other numbers 64 bit floats, byte
+ * arrays become byte strings. Lengths are always definite.
+ */
+final class MASCborEncoder {
+    /**
+     * The value of the encoding option which asks for a CBOR result.
+     */
+    static final String ENCODING = "cbor";
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1 << 5;
+    private static final int MAJOR_BYTES = 2 << 5;
+    private static final int MAJOR_TEXT = 3 << 5;
+    private static final int MAJOR_ARRAY = 4 << 5;
+    private static final int MAJOR_MAP = 5 << 5;
+    private static final int SIMPLE_FALSE = 0xf4;
+    private static final int SIMPLE_TRUE = 0xf5;
+    private static final int SIMPLE_NULL = 0xf6;
+    private static final int FLOAT_64 = 0xfb;
+
+    private byte[] buffer;
+    private int length;
+
+    private MASCborEncoder(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * @throws MASCordovaException If the value holds a type which has no JSON counterpart.
+     */
+    static byte[] encode(Object value) throws MASCordovaException {
+        MASCborEncoder encoder = new MASCborEncoder(1024);
+        encoder.write(value);
+        return Arrays.copyOf(encoder.buffer, encoder.length);
+    }
+
+    private void write(Object value) throws MASCordovaException {
+        if (value == null || value == JSONObject.NULL) {
+            writeByte(SIMPLE_NULL);
+        } else if (value instanceof String) {
+            writeText((String) value);
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            writeHead(MAJOR_MAP, object.length());
+            Iterator<String> names = object.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                writeText(name);
+                write(object.opt(name));
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            writeHead(MAJOR_ARRAY, array.length());
+            for (int i = 0; i < array.length(); i++) {
+                write(array.opt(i));
+            }
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? SIMPLE_TRUE : SIMPLE_FALSE);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            writeInteger(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (number == Math.rint(number) && !Double.isInfinite(number) && Math.abs(number) < 0x1p53) {
+                writeInteger((long) number);
+            } else {
+                writeDouble(number);
+            }
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            writeHead(MAJOR_BYTES, bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        } else {
+            throw new MASCordovaException("Unsupported value type " + value.getClass().getName());
+        }
+    }
+
+    private void writeInteger(long value) {
+        if (value >= 0) {
+            writeHead(MAJOR_UNSIGNED, value);
+        } else {
+            // -1 - n, which cannot overflow for a negative long
+            writeHead(MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    private void writeDouble(double value) {
+        ensureCapacity(9);
+        buffer[length++] = (byte) FLOAT_64;
+        writeBigEndian(Double.doubleToLongBits(value), 8);
+    }
+
+    /**
+     * Writes the string as UTF-8 without an intermediate byte array.
+     */
+    private void writeText(String text) {
+        int chars = text.length();
+        int bytes = 0;
+        for (int i = 0; i < chars; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        writeHead(MAJOR_TEXT, bytes);
+        ensureCapacity(bytes);
+        byte[] out = buffer;
+        int position = length;
+        for (int i = 0; i < chars; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out[position++] = (byte) c;
+            } else if (c < 0x800) {
+                out[position++] = (byte) (0xc0 | c >> 6);
+                out[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out[position++] = (byte) (0xf0 | codePoint >> 18);
+                out[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                out[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                out[position++] = (byte) (0x80 | codePoint & 0x3f);
+            } else {
+                // A lone surrogate has no UTF-8 form, it is encoded as its code unit and decoded as a replacement character
+                out[position++] = (byte) (0xe0 | c >> 12);
+                out[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                out[position++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        length = position;
+    }
+
+    private void writeHead(int major, long argument) {
+        ensureCapacity(9);
+        if (argument < 24) {
+            buffer[length++] = (byte) (major | argument);
+        } else if (argument < 0x100) {
+            buffer[length++] = (byte) (major | 24);
+            writeBigEndian(argument, 1);
+        } else if (argument < 0x10000) {
+            buffer[length++] = (byte) (major | 25);
+            writeBigEndian(argument, 2);
+        } else if (argument < 0x100000000L) {
+            buffer[length++] = (byte) (major | 26);
+            writeBigEndian(argument, 4);
+        } else {
+            buffer[length++] = (byte) (major | 27);
+            writeBigEndian(argument, 8);
+        }
+    }
+
+    private void writeBigEndian(long value, int bytes) {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            buffer[length++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per host circuit breaker. After a number of consecutive transient failures the circuit of the host opens and its
+ * requests fail fast, once the open period is over a single probe request decides whether it closes again.
+ */
+class MASCircuitBreaker {
+    static final String STATE_CLOSED = "closed";
+    static final String STATE_OPEN = "open";
+    static final String STATE_HALF_OPEN = "halfOpen";
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_MILLIS = 30000;
+
+    private final Map<String, Circuit> circuits = new HashMap<>();
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long openMillis = DEFAULT_OPEN_MILLIS;
+
+    /**
+     * The error of a request which failed fast because the circuit of its host is open.
+     */
+    static class OpenException extends MASCordovaException {
+        OpenException(String host) {
+            super("Circuit breaker is open for host " + host);
+        }
+    }
+
+    private static class Circuit {
+        private String state = STATE_CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private long openCount;
+        private boolean probeInFlight;
+    }
+
+    synchronized void setPolicy(int failureThreshold, long openMillis) {
+        if (failureThreshold > 0) {
+            this.failureThreshold = failureThreshold;
+        }
+        if (openMillis > 0) {
+            this.openMillis = openMillis;
+        }
+    }
+
+    /**
+     * @return true if a request may be sent to the host, false if it must fail fast.
+     */
+    synchronized boolean allowRequest(String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit == null || STATE_CLOSED.equals(circuit.state)) {
+            return true;
+        }
+        if (STATE_OPEN.equals(circuit.state) && System.currentTimeMillis() - circuit.openedAt >= openMillis) {
+            circuit.state = STATE_HALF_OPEN;
+            circuit.probeInFlight = false;
+        }
+        if (STATE_HALF_OPEN.equals(circuit.state) && !circuit.probeInFlight) {
+            circuit.probeInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void onSuccess(String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit != null) {
+            circuit.state = STATE_CLOSED;
+            circuit.consecutiveFailures = 0;
+            circuit.probeInFlight = false;
+        }
+    }
+
+    synchronized void onFailure(String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit == null) {
+            circuit = new Circuit();
+            circuits.put(host, circuit);
+        }
+        circuit.consecutiveFailures++;
+        circuit.probeInFlight = false;
+        if (STATE_HALF_OPEN.equals(circuit.state) || circuit.consecutiveFailures >= failureThreshold) {
+            if (!STATE_OPEN.equals(circuit.state)) {
+                circuit.openCount++;
+            }
+            circuit.state = STATE_OPEN;
+            circuit.openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Releases the probe of a half open circuit whose request ended without an answer from the host, such as a
+     * cancelled request.
+     */
+    synchronized void onAbandoned(String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit != null) {
+            circuit.probeInFlight = false;
+        }
+    }
+
+    synchronized void reset() {
+        circuits.clear();
+    }
+
+    /**
+     * @return The state of the circuit of every host which had a failure.
+     */
+    synchronized JSONObject getState() throws JSONException {
+        JSONObject hosts = new JSONObject();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Circuit> entry : circuits.entrySet()) {
+            Circuit circuit = entry.getValue();
+            JSONObject state = new JSONObject();
+            state.put("state", circuit.state);
+            state.put("consecutiveFailures", circuit.consecutiveFailures);
+            state.put("openCount", circuit.openCount);
+            if (STATE_OPEN.equals(circuit.state)) {
+                state.put("retryInMillis", Math.max(0, circuit.openedAt + openMillis - now));
+            }
+            hosts.put(entry.getKey(), state);
+        }
+        JSONObject result = new JSONObject();
+        result.put("failureThreshold", failureThreshold);
+        result.put("openMillis", openMillis);
+        result.put("hosts", hosts);
+        return result;
+    }
+}
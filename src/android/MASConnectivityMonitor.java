@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.ca.mas.foundation.MAS;
+import com.ca.mas.foundation.MASCallback;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks network availability through the connectivity callbacks of the platform and the reachability of the gateway
+ * through occasional probes. The last probe result is cached for a time to live, state changes are pushed to a
+ * listener.
+ */
+class MASConnectivityMonitor {
+    private static final String TAG = MASConnectivityMonitor.class.getCanonicalName();
+    private static final long DEFAULT_TTL_MILLIS = 30000;
+    private static final long DEFAULT_PROBE_INTERVAL_MILLIS = 120000;
+
+    /**
+     * Receives every change of the network availability or of the gateway reachability.
+     */
+    interface Listener {
+        void onStateChanged(JSONObject state, boolean gatewayRecovered);
+    }
+
+    private final ConnectivityManager connectivityManager;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<MASCallback<Boolean>> probeWaiters = new ArrayList<>();
+    private ConnectivityManager.NetworkCallback networkCallback;
+    private long ttlMillis = DEFAULT_TTL_MILLIS;
+    private long probeIntervalMillis = DEFAULT_PROBE_INTERVAL_MILLIS;
+    private boolean started;
+    private boolean probeInFlight;
+    private boolean networkAvailable = true;
+    private Boolean gatewayReachable;
+    private long latencyMillis = -1;
+    private long checkedAt;
+
+    private final Runnable periodicProbe = new Runnable() {
+        @Override
+        public void run() {
+            probe(null);
+            handler.postDelayed(this, probeIntervalMillis);
+        }
+    };
+
+    MASConnectivityMonitor(Context context, Listener listener) {
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.listener = listener;
+    }
+
+    synchronized void setPolicy(long ttlMillis, long probeIntervalMillis) {
+        if (ttlMillis > 0) {
+            this.ttlMillis = ttlMillis;
+        }
+        if (probeIntervalMillis > 0) {
+            this.probeIntervalMillis = probeIntervalMillis;
+        }
+    }
+
+    /**
+     * Starts listening to network changes and probing the gateway periodically.
+     */
+    void start() {
+        synchronized (this) {
+            if (started) {
+                return;
+            }
+            started = true;
+            networkAvailable = isNetworkAvailable();
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            registerNetworkCallback();
+        }
+        handler.post(periodicProbe);
+    }
+
+    void stop() {
+        synchronized (this) {
+            if (!started) {
+                return;
+            }
+            started = false;
+            // Network changes are no longer tracked, the last known availability would never be updated again
+            networkAvailable = true;
+        }
+        handler.removeCallbacks(periodicProbe);
+        if (networkCallback != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            try {
+                connectivityManager.unregisterNetworkCallback(networkCallback);
+            } catch (RuntimeException e) {
+                Log.w(TAG, e.getMessage(), e);
+            }
+            networkCallback = null;
+        }
+    }
+
+    /**
+     * @return The cached gateway reachability, or null if it is unknown or older than the time to live. Without a
+     * network the gateway is unreachable, which is only known while the monitor is started.
+     */
+    synchronized Boolean getCachedReachability() {
+        if (started && !networkAvailable) {
+            return Boolean.FALSE;
+        }
+        if (gatewayReachable == null || SystemClock.elapsedRealtime() - checkedAt > ttlMillis) {
+            return null;
+        }
+        return gatewayReachable;
+    }
+
+    /**
+     * Probes the gateway, a probe already in flight is shared.
+     *
+     * @param callback Receives the reachability, may be null.
+     */
+    void probe(MASCallback<Boolean> callback) {
+        final long startedAt;
+        synchronized (this) {
+            if (callback != null) {
+                probeWaiters.add(callback);
+            }
+            if (probeInFlight) {
+                return;
+            }
+            probeInFlight = true;
+            startedAt = SystemClock.elapsedRealtime();
+        }
+        try {
+            MAS.gatewayIsReachable(new MASCallback<Boolean>() {
+                @Override
+                public void onSuccess(Boolean result) {
+                    update(result != null && result, SystemClock.elapsedRealtime() - startedAt);
+                    for (MASCallback<Boolean> waiter : takeWaiters()) {
+                        waiter.onSuccess(result);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    update(false, -1);
+                    for (MASCallback<Boolean> waiter : takeWaiters()) {
+                        waiter.onError(e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            Log.e(TAG, e.getMessage(), e);
+            update(false, -1);
+            for (MASCallback<Boolean> waiter : takeWaiters()) {
+                waiter.onError(e);
+            }
+        }
+    }
+
+    private synchronized List<MASCallback<Boolean>> takeWaiters() {
+        List<MASCallback<Boolean>> waiters = new ArrayList<>(probeWaiters);
+        probeWaiters.clear();
+        probeInFlight = false;
+        return waiters;
+    }
+
+    synchronized JSONObject getState() throws JSONException {
+        JSONObject state = new JSONObject();
+        state.put("networkAvailable", networkAvailable);
+        state.put("gatewayReachable", gatewayReachable != null ? gatewayReachable : JSONObject.NULL);
+        state.put("latencyMillis", latencyMillis);
+        state.put("ageMillis", checkedAt > 0 ? SystemClock.elapsedRealtime() - checkedAt : -1);
+        return state;
+    }
+
+    /**
+     * Records a probe result. Every result is pushed, not only changes, so the listener can follow the latency.
+     */
+    private void update(boolean reachable, long latency) {
+        boolean recovered;
+        synchronized (this) {
+            recovered = reachable && !Boolean.TRUE.equals(gatewayReachable);
+            gatewayReachable = reachable;
+            latencyMillis = latency;
+            checkedAt = SystemClock.elapsedRealtime();
+        }
+        notifyListener(recovered);
+    }
+
+    private void onNetworkChanged(boolean available) {
+        synchronized (this) {
+            if (networkAvailable == available) {
+                return;
+            }
+            networkAvailable = available;
+            if (!available) {
+                gatewayReachable = false;
+                checkedAt = SystemClock.elapsedRealtime();
+            }
+        }
+        notifyListener(false);
+        if (available) {
+            probe(null);
+        }
+    }
+
+    private void notifyListener(boolean recovered) {
+        try {
+            listener.onStateChanged(getState(), recovered);
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage(), e);
+        }
+    }
+
+    private boolean isNetworkAvailable() {
+        NetworkInfo info = connectivityManager.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void registerNetworkCallback() {
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                postNetworkChanged();
+            }
+
+            @Override
+            public void onLost(Network network) {
+                postNetworkChanged();
+            }
+        };
+        try {
+            NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+            connectivityManager.registerNetworkCallback(request, networkCallback);
+        } catch (RuntimeException e) {
+            // Missing ACCESS_NETWORK_STATE permission, the periodic probes still run
+            Log.w(TAG, e.getMessage(), e);
+            networkCallback = null;
+        }
+    }
+
+    /**
+     * Re-reads the active network on the main thread, a callback for one network says little about the default one.
+     */
+    private void postNetworkChanged() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                onNetworkChanged(isNetworkAvailable());
+            }
+        });
+    }
+}
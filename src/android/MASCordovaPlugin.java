@@ -5,6 +5,9 @@
  */
 package com.ca.mas.cordova.core;
 
+import android.os.Debug;
+import android.util.Log;
+
 import com.ca.mas.core.client.ServerClient;
 import com.ca.mas.core.error.MAGErrorCode;
 import com.ca.mas.core.error.MAGException;
@@ -17,6 +20,7 @@ import com.ca.mas.foundation.MASException;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaWebView;
 import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -24,12 +28,339 @@ import org.json.JSONObject;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by trima09 on 27/01/2017.
  */
 
 public class MASCordovaPlugin extends CordovaPlugin {
+    private static final String TAG = MASCordovaPlugin.class.getCanonicalName();
+
+    private static final int BACKGROUND_POOL_SIZE = 2;
+    private static final int BACKGROUND_MAX_POOL_SIZE = 4;
+    private static final int BACKGROUND_QUEUE_CAPACITY = 64;
+
+    /**
+     * Bounded executor shared by all plugins for the actions registered with {@link ExecutionPolicy#BACKGROUND}.
+     */
+    private static final ThreadPoolExecutor BACKGROUND_EXECUTOR = new ThreadPoolExecutor(BACKGROUND_POOL_SIZE,
+            BACKGROUND_MAX_POOL_SIZE, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(BACKGROUND_QUEUE_CAPACITY),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "MASCordovaPlugin-" + count.incrementAndGet());
+                }
+            });
+    private static final AtomicLong BACKGROUND_REJECTED = new AtomicLong();
+    private static final AtomicLong BACKGROUND_WAIT_NANOS = new AtomicLong();
+    private static final AtomicLong BACKGROUND_MAX_WAIT_NANOS = new AtomicLong();
+    private static final AtomicLong BACKGROUND_STARTED = new AtomicLong();
+
+    /**
+     * Where a registered action runs.
+     */
+    protected enum ExecutionPolicy {
+        /**
+         * On the Cordova bridge thread, the default for actions that return quickly or only start asynchronous work.
+         */
+        INLINE,
+        /**
+         * On the shared bounded background executor, for actions that block (SDK start, key parsing, signing...).
+         */
+        BACKGROUND,
+        /**
+         * On the Activity UI thread, for actions that touch views.
+         */
+        UI_THREAD
+    }
+
+    /**
+     * Registered actions keyed by the normalized (lower case) action name.
+     */
+    private final Map<String, Action> actions = new ConcurrentHashMap<String, Action>();
+
+    private final MASMetrics metrics = new MASMetrics();
+
+    /**
+     * Handler for a single action exposed to the JavaScript layer. Handlers are registered once from
+     * {@link #pluginInitialize()} through {@link #registerAction(String, ActionHandler)}.
+     */
+    protected interface ActionHandler {
+        void handle(JSONArray args, CallbackContext callbackContext) throws Exception;
+    }
+
+    private static final class Action {
+        private final String name;
+        private final ExecutionPolicy policy;
+        private final ActionHandler handler;
+        private final AtomicLong invocations = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final MASLatencyHistogram latency = new MASLatencyHistogram();
+
+        private Action(String name, ExecutionPolicy policy, ActionHandler handler) {
+            this.name = name;
+            this.policy = policy;
+            this.handler = handler;
+        }
+    }
+
+    @Override
+    protected void pluginInitialize() {
+        super.pluginInitialize();
+        registerAction("getExecutionStats", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                success(callbackContext, getExecutionStats(), false);
+            }
+        });
+        registerAction("getMetrics", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws JSONException {
+                success(callbackContext, getMetrics(), false);
+            }
+        });
+        registerAction("resetMetrics", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                resetMetrics();
+                success(callbackContext, true, false);
+            }
+        });
+    }
+
+    /**
+     * Registers the handler of an action that runs inline on the bridge thread. Action names are matched case
+     * insensitively, the same way the plugins used to compare them with {@link String#equalsIgnoreCase(String)}.
+     *
+     * @param action  The action name used by the JavaScript layer.
+     * @param handler The handler to dispatch the action to.
+     */
+    protected void registerAction(String action, ActionHandler handler) {
+        registerAction(action, ExecutionPolicy.INLINE, handler);
+    }
+
+    /**
+     * Registers the handler of an action together with the thread it has to run on.
+     *
+     * @param action  The action name used by the JavaScript layer.
+     * @param policy  The {@link ExecutionPolicy} of the action.
+     * @param handler The handler to dispatch the action to.
+     */
+    protected void registerAction(String action, ExecutionPolicy policy, ActionHandler handler) {
+        actions.put(normalizeAction(action), new Action(action, policy, handler));
+    }
+
+    /**
+     * Dispatches the action to its registered handler with a single lookup, according to its {@link ExecutionPolicy}.
+     */
+    @Override
+    public boolean execute(String action, final JSONArray args, CallbackContext context) throws JSONException {
+        final Action registered = action != null ? actions.get(normalizeAction(action)) : null;
+        if (registered == null) {
+            context.error("Invalid action");
+            return false;
+        }
+        registered.invocations.incrementAndGet();
+        long traceId = 0;
+        if (MASTracer.isEnabled()) {
+            traceId = MASTracer.nextId();
+            MASTracer.begin("action", registered.name, traceId);
+        }
+        final CallbackContext callbackContext = new MeteredCallbackContext(context, webView, registered, System.nanoTime(), traceId);
+        switch (registered.policy) {
+            case BACKGROUND:
+                final long enqueuedAt = System.nanoTime();
+                try {
+                    BACKGROUND_EXECUTOR.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            recordWait(System.nanoTime() - enqueuedAt);
+                            if (MASTracer.isEnabled()) {
+                                MASTracer.complete("bridge", "queue " + registered.name, enqueuedAt);
+                            }
+                            invoke(registered, args, callbackContext);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    BACKGROUND_REJECTED.incrementAndGet();
+                    Log.w(TAG, "Background queue is full, rejecting " + registered.name);
+                    callbackContext.error(getError(new MASCordovaException("Too many pending requests", e)));
+                }
+                break;
+            case UI_THREAD:
+                cordova.getActivity().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        invoke(registered, args, callbackContext);
+                    }
+                });
+                break;
+            default:
+                invoke(registered, args, callbackContext);
+        }
+        return true;
+    }
+
+    private void invoke(Action registered, JSONArray args, CallbackContext callbackContext) {
+        try {
+            registered.handler.handle(args, callbackContext);
+        } catch (Throwable th) {
+            callbackContext.error(getError(th));
+        }
+    }
+
+    /**
+     * Records the latency of an action, from its dispatch to its final result, and whether it failed. While tracing,
+     * also traces the action and the delivery of its results.
+     */
+    private static final class MeteredCallbackContext extends CallbackContext {
+        private final Action action;
+        private final long startedAt;
+        private final long traceId;
+
+        private MeteredCallbackContext(CallbackContext callbackContext, CordovaWebView webView, Action action, long startedAt, long traceId) {
+            super(callbackContext.getCallbackId(), webView);
+            this.action = action;
+            this.startedAt = startedAt;
+            this.traceId = traceId;
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            boolean last = !pluginResult.getKeepCallback() && !isFinished();
+            if (last) {
+                action.latency.record(System.nanoTime() - startedAt);
+                if (pluginResult.getStatus() != PluginResult.Status.OK.ordinal()) {
+                    action.errors.incrementAndGet();
+                }
+            }
+            if (!MASTracer.isEnabled()) {
+                super.sendPluginResult(pluginResult);
+                return;
+            }
+            long deliveryStartedAt = System.nanoTime();
+            super.sendPluginResult(pluginResult);
+            MASTracer.complete("bridge", "deliver " + action.name, deliveryStartedAt);
+            if (last && traceId != 0) {
+                MASTracer.end("action", action.name, traceId);
+            }
+        }
+    }
+
+    /**
+     * Records the latency of a gateway request under the template of its path.
+     *
+     * @param template The path template, see {@link MASMetrics#toTemplate(String)}.
+     */
+    protected void recordPathLatency(String template, long nanos) {
+        metrics.getPathHistogram(template).record(nanos);
+    }
+
+    /**
+     * @return The latency histogram and error count of every action invoked at least once, the latency histogram of
+     * every gateway path template and the error counts by error code.
+     */
+    protected JSONObject getMetrics() throws JSONException {
+        JSONObject actionMetrics = new JSONObject();
+        for (Action registered : actions.values()) {
+            if (registered.latency.getCount() > 0) {
+                JSONObject latency = registered.latency.toJSON();
+                latency.put("errorCount", registered.errors.get());
+                actionMetrics.put(registered.name, latency);
+            }
+        }
+        JSONObject result = new JSONObject();
+        result.put("actions", actionMetrics);
+        result.put("paths", metrics.getPaths());
+        result.put("errors", metrics.getErrors());
+        return result;
+    }
+
+    protected void resetMetrics() {
+        for (Action registered : actions.values()) {
+            registered.latency.reset();
+            registered.errors.set(0);
+        }
+        metrics.reset();
+    }
+
+    private static void recordWait(long waitNanos) {
+        BACKGROUND_STARTED.incrementAndGet();
+        BACKGROUND_WAIT_NANOS.addAndGet(waitNanos);
+        long max = BACKGROUND_MAX_WAIT_NANOS.get();
+        while (waitNanos > max && !BACKGROUND_MAX_WAIT_NANOS.compareAndSet(max, waitNanos)) {
+            max = BACKGROUND_MAX_WAIT_NANOS.get();
+        }
+    }
+
+    /**
+     * @return The state of the background executor (queue depth, wait times and rejections) and the invocation
+     * count of every action of this plugin.
+     */
+    protected JSONObject getExecutionStats() throws JSONException {
+        JSONObject background = new JSONObject();
+        long started = BACKGROUND_STARTED.get();
+        background.put("poolSize", BACKGROUND_EXECUTOR.getPoolSize());
+        background.put("activeCount", BACKGROUND_EXECUTOR.getActiveCount());
+        background.put("queueDepth", BACKGROUND_EXECUTOR.getQueue().size());
+        background.put("queueCapacity", BACKGROUND_QUEUE_CAPACITY);
+        background.put("completedCount", BACKGROUND_EXECUTOR.getCompletedTaskCount());
+        background.put("rejectedCount", BACKGROUND_REJECTED.get());
+        background.put("averageWaitMillis", started > 0 ? TimeUnit.NANOSECONDS.toMillis(BACKGROUND_WAIT_NANOS.get() / started) : 0);
+        background.put("maxWaitMillis", TimeUnit.NANOSECONDS.toMillis(BACKGROUND_MAX_WAIT_NANOS.get()));
+
+        Runtime runtime = Runtime.getRuntime();
+        JSONObject memory = new JSONObject();
+        memory.put("javaHeapUsedBytes", runtime.totalMemory() - runtime.freeMemory());
+        memory.put("javaHeapMaxBytes", runtime.maxMemory());
+        memory.put("nativeHeapAllocatedBytes", Debug.getNativeHeapAllocatedSize());
+        memory.put("nativeHeapSizeBytes", Debug.getNativeHeapSize());
+
+        JSONObject stats = new JSONObject();
+        stats.put("background", background);
+        stats.put("memory", memory);
+        stats.put("invocations", new JSONObject(getInvocationCounts()));
+        return stats;
+    }
+
+    /**
+     * @param action The action name.
+     * @return The number of times the action has been invoked since the plugin was initialized.
+     */
+    protected long getInvocationCount(String action) {
+        Action registered = actions.get(normalizeAction(action));
+        return registered != null ? registered.invocations.get() : 0;
+    }
+
+    /**
+     * @return The invocation count of every registered action, keyed by the registered action name.
+     */
+    protected Map<String, Long> getInvocationCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (Action registered : actions.values()) {
+            counts.put(registered.name, registered.invocations.get());
+        }
+        return counts;
+    }
+
+    private static String normalizeAction(String action) {
+        return action.toLowerCase(Locale.US);
+    }
 
     /**
      * Transform the throwable to a JSON error, used when calling back into JavaScript when for error
@@ -95,6 +426,7 @@ public class MASCordovaPlugin extends CordovaPlugin {
             errorMessage = "Mobile SDK has not been initialized.";
         }
 
+        metrics.recordError(errorCode);
         JSONObject error = new JSONObject();
         try {
             error.put("errorCode", errorCode);
@@ -121,6 +453,12 @@ public class MASCordovaPlugin extends CordovaPlugin {
         callbackContext.sendPluginResult(result);
     }
 
+    protected void success(CallbackContext callbackContext, int value, boolean setKeepCallback) {
+        PluginResult result = new PluginResult(PluginResult.Status.OK, value);
+        result.setKeepCallback(setKeepCallback);
+        callbackContext.sendPluginResult(result);
+    }
+
     protected void success(CallbackContext callbackContext, JSONObject resultData, boolean setKeepCallback) {
         PluginResult result = new PluginResult(PluginResult.Status.OK, resultData);
         result.setKeepCallback(setKeepCallback);
@@ -139,9 +477,55 @@ public class MASCordovaPlugin extends CordovaPlugin {
         callbackContext.sendPluginResult(result);
     }
 
+    /**
+     * Sends JSON text serialized by the caller, the JavaScript success callback receives it parsed as for a
+     * JSONObject result.
+     */
+    protected void successJson(CallbackContext callbackContext, String json, boolean setKeepCallback) {
+        PluginResult result = new SerializedJsonResult(json);
+        result.setKeepCallback(setKeepCallback);
+        callbackContext.sendPluginResult(result);
+    }
+
     protected void success(CallbackContext callbackContext, byte[] binary, boolean setKeepCallback) {
         PluginResult result = new PluginResult(PluginResult.Status.OK, binary);
         result.setKeepCallback(setKeepCallback);
         callbackContext.sendPluginResult(result);
     }
-}
\ No newline at end of file
+
+    /**
+     * Sends the binary data as an ArrayBuffer together with a JSON object in a single multipart result, the
+     * JavaScript success callback receives them as two arguments.
+     */
+    protected void success(CallbackContext callbackContext, byte[] binary, JSONObject resultData, boolean setKeepCallback) {
+        List<PluginResult> parts = new ArrayList<PluginResult>(2);
+        parts.add(new PluginResult(PluginResult.Status.OK, binary));
+        parts.add(new PluginResult(PluginResult.Status.OK, resultData));
+        PluginResult result = new PluginResult(PluginResult.Status.OK, parts);
+        result.setKeepCallback(setKeepCallback);
+        callbackContext.sendPluginResult(result);
+    }
+
+    /**
+     * JSON result whose message is the text it is given. The bridge sends a result by its message type and message,
+     * which for a JSONObject result is the text the object serializes to.
+     */
+    private static class SerializedJsonResult extends PluginResult {
+        private final String json;
+
+        private SerializedJsonResult(String json) {
+            super(Status.OK, json);
+            this.json = json;
+        }
+
+        @Override
+        public int getMessageType() {
+            return MESSAGE_TYPE_JSON;
+        }
+
+        @Override
+        public String getMessage() {
+            return json;
+        }
+    }
+}
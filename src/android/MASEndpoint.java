@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.net.Uri;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A named Gateway endpoint registered once from JavaScript: the method, a path template with {placeholders}, default
+ * headers, request and response types and request options. The registration is parsed and validated once, including
+ * its response projection, an invocation only carries the placeholder values, the body and its own options.
+ */
+class MASEndpoint {
+    private static final String[] METHODS = {"GET", "DELETE", "PUT", "POST"};
+    private static final int MAX_TYPE = 6;
+
+    private final String method;
+    // Literal parts of the template around the placeholders, there is one more literal than placeholders
+    private final String[] literals;
+    private final String[] placeholders;
+    private final int expandedLength;
+    private final String pathTemplate;
+    private final JSONObject headers;
+    private final String headersKey;
+    private final String[] headerNames;
+    private final String[] headerValues;
+    private final int requestType;
+    private final int responseType;
+    private final boolean isPublic;
+    private final JSONObject options;
+    private final MASResponseProjection projection;
+
+    private MASEndpoint(String method, String path, String[] literals, String[] placeholders, JSONObject headers,
+                        int requestType, int responseType, boolean isPublic, JSONObject options,
+                        MASResponseProjection projection) throws MASCordovaException {
+        this.method = method;
+        this.literals = literals;
+        this.placeholders = placeholders;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.expandedLength = length + placeholders.length * 16;
+        this.pathTemplate = method + " " + MASMetrics.toTemplate(path);
+        this.headers = headers;
+        this.headersKey = String.valueOf(headers);
+        int count = headers != null ? headers.length() : 0;
+        this.headerNames = new String[count];
+        this.headerValues = new String[count];
+        if (headers != null) {
+            Iterator<String> names = headers.keys();
+            for (int i = 0; names.hasNext(); i++) {
+                headerNames[i] = names.next();
+                try {
+                    headerValues[i] = headers.getString(headerNames[i]);
+                } catch (JSONException e) {
+                    throw new MASCordovaException("Invalid value for header " + headerNames[i], e);
+                }
+            }
+        }
+        this.requestType = requestType;
+        this.responseType = responseType;
+        this.isPublic = isPublic;
+        this.options = options;
+        this.projection = projection;
+    }
+
+    /**
+     * @param spec <code>{method, path, headers, requestType, responseType, isPublic, options}</code>
+     */
+    static MASEndpoint parse(JSONObject spec) throws MASCordovaException {
+        String method = spec.optString("method", "GET").toUpperCase(Locale.US);
+        if (!Arrays.asList(METHODS).contains(method)) {
+            throw new MASCordovaException("Unsupported method " + method);
+        }
+        String path = spec.optString("path", null);
+        if (path == null || path.isEmpty()) {
+            throw new MASCordovaException("Invalid endpoint path");
+        }
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int start = 0;
+        int open;
+        while ((open = path.indexOf('{', start)) >= 0) {
+            int close = path.indexOf('}', open);
+            if (close < 0 || close == open + 1) {
+                throw new MASCordovaException("Invalid placeholder in endpoint path " + path);
+            }
+            literals.add(path.substring(start, open));
+            placeholders.add(path.substring(open + 1, close));
+            start = close + 1;
+        }
+        if (path.indexOf('}', start) >= 0) {
+            throw new MASCordovaException("Invalid placeholder in endpoint path " + path);
+        }
+        literals.add(path.substring(start));
+        int requestType = toType(spec, "requestType");
+        int responseType = toType(spec, "responseType");
+        JSONObject options = spec.optJSONObject("options");
+        MASResponseProjection projection = null;
+        if (options != null) {
+            projection = MASResponseProjection.parse(options.optJSONArray("fields"), options.optJSONArray("responseHeaders"));
+        }
+        return new MASEndpoint(method, path, literals.toArray(new String[literals.size()]),
+                placeholders.toArray(new String[placeholders.size()]), spec.optJSONObject("headers"), requestType,
+                responseType, spec.optBoolean("isPublic", false), options, projection);
+    }
+
+    private static int toType(JSONObject spec, String name) throws MASCordovaException {
+        int type = spec.optInt(name, 0);
+        if (type < 0 || type > MAX_TYPE) {
+            throw new MASCordovaException("Invalid " + name + " " + type);
+        }
+        return type;
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    int getRequestType() {
+        return requestType;
+    }
+
+    int getResponseType() {
+        return responseType;
+    }
+
+    boolean isPublic() {
+        return isPublic;
+    }
+
+    /**
+     * @return The method and the path template, under which the latency of the endpoint is recorded.
+     */
+    String getPathTemplate() {
+        return pathTemplate;
+    }
+
+    JSONObject getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return The headers as they take part in the response cache key.
+     */
+    String getHeadersKey() {
+        return headersKey;
+    }
+
+    String[] getHeaderNames() {
+        return headerNames;
+    }
+
+    String[] getHeaderValues() {
+        return headerValues;
+    }
+
+    /**
+     * @return The registered request options, may be null.
+     */
+    JSONObject getOptions() {
+        return options;
+    }
+
+    /**
+     * @return The registered response projection, may be null.
+     */
+    MASResponseProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * @return The path with every placeholder replaced by its value, encoded as a path segment.
+     */
+    String expand(JSONObject values) throws MASCordovaException {
+        if (placeholders.length == 0) {
+            return literals[0];
+        }
+        StringBuilder path = new StringBuilder(expandedLength);
+        for (int i = 0; i < placeholders.length; i++) {
+            path.append(literals[i]);
+            Object value = values != null ? values.opt(placeholders[i]) : null;
+            if (value == null || value == JSONObject.NULL) {
+                throw new MASCordovaException("Missing value for " + placeholders[i]);
+            }
+            path.append(Uri.encode(String.valueOf(value)));
+        }
+        return path.append(literals[placeholders.length]).toString();
+    }
+
+    /**
+     * @param path       The expanded path of the invocation.
+     * @param parameters The parameters or body, a JSON object or a raw body string.
+     * @return The positional arguments of the invocation, in the order read by the invoke commands, for the offline
+     * queue to replay it.
+     */
+    JSONArray toInvokeArgs(String path, Object parameters, JSONObject invocationOptions) {
+        JSONArray args = new JSONArray();
+        args.put(path);
+        args.put(parameters != null ? parameters : JSONObject.NULL);
+        args.put(headers != null ? headers : JSONObject.NULL);
+        args.put(requestType);
+        args.put(responseType);
+        args.put(isPublic);
+        args.put(mergeOptions(invocationOptions));
+        return args;
+    }
+
+    /**
+     * @return The registered options overridden by the ones of the invocation.
+     */
+    private Object mergeOptions(JSONObject invocationOptions) {
+        if (invocationOptions == null) {
+            return options != null ? options : JSONObject.NULL;
+        }
+        if (options == null) {
+            return invocationOptions;
+        }
+        JSONObject merged = new JSONObject();
+        try {
+            Iterator<String> names = options.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                merged.put(name, options.get(name));
+            }
+            names = invocationOptions.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                merged.put(name, invocationOptions.get(name));
+            }
+        } catch (JSONException ignore) {
+        }
+        return merged;
+    }
+}
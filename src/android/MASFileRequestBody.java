@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.ca.mas.core.http.ContentType;
+import com.ca.mas.foundation.MASRequestBody;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.UUID;
+
+/**
+ * Request body which streams a local file (file:// or content:// URI) to the gateway in bounded chunks, optionally
+ * wrapped in a multipart/form-data envelope. The file content never goes through the JavaScript layer.
+ */
+class MASFileRequestBody extends MASRequestBody {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL_MILLIS = 250;
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final String CRLF = "\r\n";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Context context;
+    private final Uri uri;
+    private final String fileContentType;
+    private final long fileLength;
+    private final byte[] preamble;
+    private final byte[] epilogue;
+    private final ContentType contentType;
+    private final MASProgressListener listener;
+
+    /**
+     * @param context  The context used to resolve the file URI.
+     * @param spec     <code>{fileUri, contentType, multipart: {name, fileName, fields}}</code>, multipart is optional.
+     * @param listener Receives the upload progress, may be null.
+     */
+    MASFileRequestBody(Context context, JSONObject spec, MASProgressListener listener) throws IOException {
+        this.context = context;
+        this.uri = Uri.parse(spec.optString("fileUri"));
+        this.fileContentType = spec.optString("contentType", DEFAULT_CONTENT_TYPE);
+        if (fileContentType.indexOf('\r') >= 0 || fileContentType.indexOf('\n') >= 0) {
+            throw new IOException("Invalid content type " + fileContentType);
+        }
+        this.fileLength = resolveLength();
+        this.listener = listener;
+
+        JSONObject multipart = spec.optJSONObject("multipart");
+        if (multipart == null) {
+            preamble = new byte[0];
+            epilogue = new byte[0];
+            contentType = new ContentType(fileContentType, null);
+            return;
+        }
+        String boundary = "MASBoundary" + UUID.randomUUID().toString().replace("-", "");
+        StringBuilder builder = new StringBuilder();
+        JSONObject fields = multipart.optJSONObject("fields");
+        if (fields != null) {
+            Iterator<String> names = fields.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                builder.append("--").append(boundary).append(CRLF)
+                        .append("Content-Disposition: form-data; name=");
+                appendQuoted(builder, name).append(CRLF)
+                        .append(CRLF)
+                        .append(fields.optString(name)).append(CRLF);
+            }
+        }
+        String fileName = multipart.optString("fileName", uri.getLastPathSegment());
+        if (fileName == null) {
+            fileName = "file";
+        }
+        builder.append("--").append(boundary).append(CRLF)
+                .append("Content-Disposition: form-data; name=");
+        appendQuoted(builder, multipart.optString("name", "file")).append("; filename=");
+        appendQuoted(builder, fileName).append(CRLF)
+                .append("Content-Type: ").append(fileContentType).append(CRLF)
+                .append(CRLF);
+        preamble = builder.toString().getBytes(UTF_8);
+        epilogue = (CRLF + "--" + boundary + "--" + CRLF).getBytes(UTF_8);
+        contentType = new ContentType("multipart/form-data; boundary=" + boundary, null);
+    }
+
+    /**
+     * Quotes a field or file name the way browsers do, so that it cannot end the header or inject another one.
+     */
+    private static StringBuilder appendQuoted(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("%22");
+                    break;
+                case '\r':
+                    builder.append("%0D");
+                    break;
+                case '\n':
+                    builder.append("%0A");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+        return builder.append('"');
+    }
+
+    /**
+     * @return Whether the URI is a file path, with the file scheme or without any scheme.
+     */
+    private boolean isFile() {
+        return uri.getScheme() == null || "file".equalsIgnoreCase(uri.getScheme());
+    }
+
+    private long resolveLength() {
+        if (isFile()) {
+            File file = new File(uri.getPath());
+            return file.exists() ? file.length() : -1;
+        }
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = context.getContentResolver().openAssetFileDescriptor(uri, "r");
+            return descriptor != null ? descriptor.getLength() : -1;
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            if (descriptor != null) {
+                try {
+                    descriptor.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public ContentType getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public long getContentLength() {
+        if (fileLength < 0) {
+            return -1;
+        }
+        return preamble.length + fileLength + epilogue.length;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        InputStream inputStream = isFile() ? new FileInputStream(uri.getPath()) : context.getContentResolver().openInputStream(uri);
+        if (inputStream == null) {
+            throw new IOException("Unable to open " + uri);
+        }
+        try {
+            outputStream.write(preamble);
+            byte[] chunk = new byte[CHUNK_SIZE];
+            long bytesWritten = 0;
+            long lastProgress = 0;
+            int read;
+            while ((read = inputStream.read(chunk)) != -1) {
+                outputStream.write(chunk, 0, read);
+                bytesWritten += read;
+                long now = SystemClock.elapsedRealtime();
+                if (listener != null && now - lastProgress >= PROGRESS_INTERVAL_MILLIS) {
+                    lastProgress = now;
+                    listener.onProgress(bytesWritten, fileLength);
+                }
+            }
+            outputStream.write(epilogue);
+            outputStream.flush();
+            if (listener != null) {
+                listener.onProgress(bytesWritten, fileLength);
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+}
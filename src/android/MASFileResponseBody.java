@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.os.SystemClock;
+
+import com.ca.mas.core.http.MAGHttpResponse;
+import com.ca.mas.foundation.MASResponseBody;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Response body which streams the content straight into a file instead of buffering it in memory.
+ * The content is written to a temporary file that is renamed to the target file once the download is complete,
+ * {@link #getContent()} then returns the file metadata. Progress is reported at most every
+ * {@link #PROGRESS_INTERVAL_MILLIS} milliseconds.
+ */
+class MASFileResponseBody extends MASResponseBody<JSONObject> {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL_MILLIS = 250;
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final File file;
+    private final File partialFile;
+    private final MASProgressListener listener;
+    private JSONObject content;
+
+    MASFileResponseBody(File file, MASProgressListener listener) {
+        this.file = file;
+        this.partialFile = new File(file.getPath() + PARTIAL_SUFFIX);
+        this.listener = listener;
+    }
+
+    @Override
+    public void read(MAGHttpResponse response) throws IOException {
+        long totalBytes = response.getContentLength();
+        long bytesWritten = 0;
+        long lastProgress = 0;
+        InputStream inputStream = response.getInputStream();
+        ReadableByteChannel source = null;
+        FileOutputStream outputStream = null;
+        try {
+            source = Channels.newChannel(inputStream);
+            outputStream = new FileOutputStream(partialFile);
+            FileChannel target = outputStream.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    bytesWritten += target.write(buffer);
+                }
+                buffer.clear();
+                long now = SystemClock.elapsedRealtime();
+                if (listener != null && now - lastProgress >= PROGRESS_INTERVAL_MILLIS) {
+                    lastProgress = now;
+                    listener.onProgress(bytesWritten, totalBytes);
+                }
+            }
+            target.force(false);
+        } catch (IOException e) {
+            discard();
+            throw e;
+        } finally {
+            if (outputStream != null) {
+                outputStream.close();
+            }
+            if (source != null) {
+                source.close();
+            }
+        }
+        if (file.exists() && !file.delete() || !partialFile.renameTo(file)) {
+            discard();
+            throw new IOException("Unable to write " + file.getPath());
+        }
+        if (listener != null) {
+            listener.onProgress(bytesWritten, totalBytes);
+        }
+        try {
+            content = new JSONObject();
+            content.put("path", file.getAbsolutePath());
+            content.put("size", bytesWritten);
+            content.put("contentType", response.getContentType());
+        } catch (JSONException ignore) {
+        }
+    }
+
+    /**
+     * Deletes the partially downloaded content, if any.
+     */
+    void discard() {
+        if (partialFile.exists()) {
+            partialFile.delete();
+        }
+    }
+
+    @Override
+    public JSONObject getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.ca.mas.core.http.MAGHttpResponse;
+import com.ca.mas.foundation.MASResponseBody;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Response body which parses the JSON content as it arrives and hands the elements of one of its arrays to a
+ * listener in batches, so that the whole document is never held in memory. {@link #getContent()} returns the rest of
+ * the document, without the streamed array. A document which does not lead to the array, such as a scalar, is
+ * returned whole.
+ */
+class MASJsonStreamResponseBody extends MASResponseBody<Object> {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Receives the streamed array elements.
+     */
+    interface Listener {
+        /**
+         * @return false to stop reading the response.
+         */
+        boolean onBatch(JSONArray items, int sequence);
+    }
+
+    private final String[] path;
+    private final int batchSize;
+    private final Listener listener;
+    private JSONArray batch = new JSONArray();
+    private int sequence;
+    private long streamedCount;
+    private Object content;
+
+    /**
+     * @param path The names of the members leading to the streamed array, empty if the document is the array.
+     */
+    MASJsonStreamResponseBody(String[] path, int batchSize, Listener listener) {
+        this.path = path;
+        this.batchSize = Math.max(1, batchSize);
+        this.listener = listener;
+    }
+
+    @Override
+    public void read(MAGHttpResponse response) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(response.getInputStream(), getCharset(response.getContentType())));
+        try {
+            try {
+                reader.peek();
+            } catch (EOFException e) {
+                // No content
+                content = new JSONObject();
+                return;
+            }
+            Object rest = readNode(reader, 0);
+            emit();
+            // Only the streamed document itself leaves nothing
+            content = rest != null ? rest : new JSONObject();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Charset getCharset(String contentType) {
+        if (contentType != null) {
+            int index = contentType.toLowerCase(Locale.US).indexOf("charset=");
+            if (index >= 0) {
+                try {
+                    return Charset.forName(contentType.substring(index + 8).split(";")[0].trim().replace("\"", ""));
+                } catch (RuntimeException ignore) {
+                }
+            }
+        }
+        return UTF_8;
+    }
+
+    /**
+     * Reads the node at the depth of the path, streaming the array at its end.
+     *
+     * @return The node without the streamed array, or null if the node is the streamed array.
+     */
+    private Object readNode(JsonReader reader, int depth) throws IOException {
+        JsonToken token = reader.peek();
+        if (depth == path.length && token == JsonToken.BEGIN_ARRAY) {
+            stream(reader);
+            return null;
+        }
+        if (depth == path.length || token != JsonToken.BEGIN_OBJECT) {
+            return readValue(reader);
+        }
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            Object value = name.equals(path[depth]) ? readNode(reader, depth + 1) : readValue(reader);
+            if (value != null) {
+                put(object, name, value);
+            }
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private void stream(JsonReader reader) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            batch.put(readValue(reader));
+            streamedCount++;
+            if (batch.length() >= batchSize) {
+                emit();
+            }
+        }
+        reader.endArray();
+    }
+
+    private void emit() throws IOException {
+        if (batch.length() == 0) {
+            return;
+        }
+        JSONArray items = batch;
+        batch = new JSONArray();
+        if (!listener.onBatch(items, sequence++)) {
+            throw new IOException("Request cancelled");
+        }
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    put(object, reader.nextName(), readValue(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                String number = reader.nextString();
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    return Double.parseDouble(number);
+                }
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    private static void put(JSONObject object, String name, Object value) {
+        try {
+            object.put(name, value);
+        } catch (JSONException ignore) {
+        }
+    }
+
+    long getStreamedCount() {
+        return streamedCount;
+    }
+
+    @Override
+    public Object getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of the gateway path templates and error counts by error code. The number of templates and
+ * error codes is bounded, the ones beyond the bound are counted together.
+ */
+class MASMetrics {
+    private static final int MAX_PATHS = 64;
+    private static final int ERROR_SLOTS = 64;
+    private static final String OTHER = "other";
+
+    private final ConcurrentHashMap<String, MASLatencyHistogram> paths = new ConcurrentHashMap<>();
+    private final MASLatencyHistogram otherPaths = new MASLatencyHistogram();
+    // Open addressing table, a slot holds the error code shifted so that 0 means free
+    private final AtomicLongArray errorCodes = new AtomicLongArray(ERROR_SLOTS);
+    private final AtomicLongArray errorCounts = new AtomicLongArray(ERROR_SLOTS);
+    private final AtomicLong otherErrors = new AtomicLong();
+
+    /**
+     * Replaces the variable segments of a path, numbers and identifiers, so requests to the same resource type
+     * share a histogram.
+     */
+    static String toTemplate(String path) {
+        if (path == null) {
+            return OTHER;
+        }
+        int query = path.indexOf('?');
+        String[] segments = (query >= 0 ? path.substring(0, query) : path).split("/", -1);
+        StringBuilder template = new StringBuilder(path.length());
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                template.append('/');
+            }
+            template.append(isIdentifier(segments[i]) ? "{id}" : segments[i]);
+        }
+        return template.toString();
+    }
+
+    private static boolean isIdentifier(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        int digits = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (Character.isDigit(c)) {
+                digits++;
+            } else if (!(c >= 'a' && c <= 'f') && !(c >= 'A' && c <= 'F') && c != '-') {
+                return false;
+            }
+        }
+        // Numbers, UUIDs and hexadecimal ids, but not words such as "cafe"
+        return digits == segment.length() || (digits > 0 && segment.length() >= 16);
+    }
+
+    /**
+     * @return The histogram of the template, created on first use.
+     */
+    MASLatencyHistogram getPathHistogram(String template) {
+        MASLatencyHistogram histogram = paths.get(template);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (paths.size() >= MAX_PATHS) {
+            return otherPaths;
+        }
+        histogram = new MASLatencyHistogram();
+        MASLatencyHistogram existing = paths.putIfAbsent(template, histogram);
+        return existing != null ? existing : histogram;
+    }
+
+    void recordError(int errorCode) {
+        long key = (long) errorCode - Integer.MIN_VALUE + 1;
+        int start = (errorCode & 0x7fffffff) % ERROR_SLOTS;
+        for (int i = 0; i < ERROR_SLOTS; i++) {
+            int slot = (start + i) % ERROR_SLOTS;
+            long current = errorCodes.get(slot);
+            if (current == key || (current == 0 && (errorCodes.compareAndSet(slot, 0, key) || errorCodes.get(slot) == key))) {
+                errorCounts.incrementAndGet(slot);
+                return;
+            }
+        }
+        otherErrors.incrementAndGet();
+    }
+
+    void reset() {
+        // Histograms are kept, so a request in flight never records into a discarded one
+        for (MASLatencyHistogram histogram : paths.values()) {
+            histogram.reset();
+        }
+        otherPaths.reset();
+        for (int i = 0; i < ERROR_SLOTS; i++) {
+            errorCounts.set(i, 0);
+        }
+        otherErrors.set(0);
+    }
+
+    JSONObject getPaths() throws JSONException {
+        JSONObject result = new JSONObject();
+        for (Map.Entry<String, MASLatencyHistogram> entry : paths.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toJSON());
+        }
+        if (otherPaths.getCount() > 0) {
+            result.put(OTHER, otherPaths.toJSON());
+        }
+        return result;
+    }
+
+    JSONObject getErrors() throws JSONException {
+        JSONObject result = new JSONObject();
+        for (int i = 0; i < ERROR_SLOTS; i++) {
+            long key = errorCodes.get(i);
+            long count = errorCounts.get(i);
+            if (key != 0 && count > 0) {
+                result.put(String.valueOf(key + Integer.MIN_VALUE - 1), count);
+            }
+        }
+        if (otherErrors.get() > 0) {
+            result.put(OTHER, otherErrors.get());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,524 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASResponse;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Durable queue of deferred mutating requests. Every change is appended to a journal, records written concurrently
+ * share a single fsync, and the journal is compacted once most of its records are obsolete. Requests are replayed in
+ * order, one at a time and no faster than the replay rate, until one of them fails for lack of a reachable gateway.
+ */
+class MASOfflineQueue {
+    private static final String TAG = MASOfflineQueue.class.getCanonicalName();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_COMPACT = "journal.compact";
+    private static final int COMPACTION_MIN_OBSOLETE = 64;
+    private static final long DEFAULT_REPLAY_INTERVAL_MILLIS = 500;
+    private static final long FLUSH_RETRY_DELAY_MILLIS = 5000;
+
+    private static final String NODE_OP = "op";
+    private static final String NODE_ID = "id";
+    private static final String NODE_USER = "user";
+    private static final String NODE_METHOD = "method";
+    private static final String NODE_ARGS = "args";
+    private static final String OP_ADD = "add";
+    private static final String OP_DONE = "done";
+
+    /**
+     * Sends a queued request to the gateway.
+     */
+    interface Sender {
+        void send(String method, JSONArray args, MASCallback<MASResponse<Object>> callback);
+    }
+
+    /**
+     * Receives the id of a request once it is on disk, or the error which kept it from being written.
+     */
+    interface Callback {
+        void onDurable(long id);
+
+        void onError(Throwable error);
+    }
+
+    /**
+     * Receives the outcome of every replayed request.
+     */
+    interface Listener {
+        void onReplayed(long id, String method, JSONArray args, MASResponse<Object> response, Throwable error);
+    }
+
+    private final File directory;
+    private final Sender sender;
+    private final Listener listener;
+    private final ExecutorService journalExecutor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ConcurrentLinkedQueue<Record> pendingRecords = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final LinkedHashMap<Long, JSONObject> entries = new LinkedHashMap<>();
+    private long nextId = 1;
+    private int obsoleteRecords;
+    private boolean loaded;
+    private boolean replaying;
+    private long lastReplayAt;
+    private long replayIntervalMillis = DEFAULT_REPLAY_INTERVAL_MILLIS;
+
+    private static class Record {
+        private final String line;
+        private final long id;
+        // Null for the records which mark a request as done
+        private final Callback callback;
+
+        private Record(String line, long id, Callback callback) {
+            this.line = line;
+            this.id = id;
+            this.callback = callback;
+        }
+    }
+
+    MASOfflineQueue(File directory, Sender sender, Listener listener) {
+        this.directory = directory;
+        this.sender = sender;
+        this.listener = listener;
+        journalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    synchronized void setReplayRate(double requestsPerSecond) {
+        if (requestsPerSecond > 0) {
+            replayIntervalMillis = (long) (1000 / requestsPerSecond);
+        }
+    }
+
+    /**
+     * Appends a request to the queue.
+     *
+     * @param onDurable Invoked with the queue id once the request is on disk.
+     */
+    void add(final String user, final String method, final JSONArray args, final Callback onDurable) {
+        // Ids are assigned on the journal thread, after the journal has been loaded
+        journalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long id;
+                JSONObject entry = new JSONObject();
+                try {
+                    synchronized (MASOfflineQueue.this) {
+                        id = nextId++;
+                        entry.put(NODE_ID, id);
+                        entry.put(NODE_USER, user);
+                        entry.put(NODE_METHOD, method);
+                        entry.put(NODE_ARGS, args);
+                        entries.put(id, entry);
+                    }
+                    JSONObject record = new JSONObject(entry.toString());
+                    record.put(NODE_OP, OP_ADD);
+                    append(new Record(record.toString(), id, onDurable));
+                } catch (final JSONException e) {
+                    Log.e(TAG, e.getMessage(), e);
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onDurable.onError(e);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The queued requests in replay order.
+     */
+    synchronized JSONArray list() {
+        JSONArray result = new JSONArray();
+        for (JSONObject entry : entries.values()) {
+            result.put(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Removes a queued request without replaying it.
+     *
+     * @return false if the request is not queued.
+     */
+    boolean remove(long id) {
+        synchronized (this) {
+            if (entries.remove(id) == null) {
+                return false;
+            }
+        }
+        markDone(id);
+        return true;
+    }
+
+    /**
+     * Replays the queued requests of the user, starting with the oldest one, unless a replay is already running.
+     */
+    void replay(final String user) {
+        synchronized (this) {
+            if (replaying || !loaded) {
+                return;
+            }
+            replaying = true;
+        }
+        replayNext(user);
+    }
+
+    private void replayNext(final String user) {
+        final Map.Entry<Long, JSONObject> next;
+        final long delay;
+        synchronized (this) {
+            next = first(user);
+            if (next == null) {
+                replaying = false;
+                return;
+            }
+            delay = Math.max(0, lastReplayAt + replayIntervalMillis - System.currentTimeMillis());
+        }
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                final long id = next.getKey();
+                synchronized (MASOfflineQueue.this) {
+                    lastReplayAt = System.currentTimeMillis();
+                    if (!entries.containsKey(id)) {
+                        // Removed while waiting for its turn
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                replayNext(user);
+                            }
+                        });
+                        return;
+                    }
+                }
+                final String method = next.getValue().optString(NODE_METHOD);
+                final JSONArray args = next.getValue().optJSONArray(NODE_ARGS);
+                sender.send(method, args, new MASCallback<MASResponse<Object>>() {
+                    @Override
+                    public void onSuccess(MASResponse<Object> masResponse) {
+                        complete(id);
+                        listener.onReplayed(id, method, args, masResponse, null);
+                        replayNext(user);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        if (MASRetryPolicy.isTransient(throwable)) {
+                            // Still offline, keep the request at the head of the queue until the next replay
+                            synchronized (MASOfflineQueue.this) {
+                                replaying = false;
+                            }
+                            return;
+                        }
+                        complete(id);
+                        listener.onReplayed(id, method, args, null, throwable);
+                        replayNext(user);
+                    }
+                });
+            }
+        }, delay);
+    }
+
+    private Map.Entry<Long, JSONObject> first(String user) {
+        for (Map.Entry<Long, JSONObject> entry : entries.entrySet()) {
+            String owner = entry.getValue().optString(NODE_USER, null);
+            if (owner == null ? user == null : owner.equals(user)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void complete(long id) {
+        synchronized (this) {
+            entries.remove(id);
+        }
+        markDone(id);
+    }
+
+    private void markDone(long id) {
+        JSONObject record = new JSONObject();
+        try {
+            record.put(NODE_OP, OP_DONE);
+            record.put(NODE_ID, id);
+        } catch (JSONException ignore) {
+        }
+        append(new Record(record.toString(), id, null));
+    }
+
+    private void append(Record record) {
+        pendingRecords.add(record);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            journalExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes every pending record and syncs the journal once for all of them. The requests of a batch which could not
+     * be written are dropped from the queue and failed, so that the caller still holds them.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        List<Record> batch = new ArrayList<>();
+        Record record;
+        while ((record = pendingRecords.poll()) != null) {
+            batch.add(record);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            write(batch);
+        } catch (final IOException e) {
+            Log.e(TAG, e.getMessage(), e);
+            for (final Record r : batch) {
+                if (r.callback == null) {
+                    // The request is already done in memory, its record is written by a later flush
+                    pendingRecords.add(r);
+                    continue;
+                }
+                synchronized (this) {
+                    entries.remove(r.id);
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        r.callback.onError(e);
+                    }
+                });
+            }
+            if (!pendingRecords.isEmpty()) {
+                handler.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        scheduleFlush();
+                    }
+                }, FLUSH_RETRY_DELAY_MILLIS);
+            }
+            return;
+        }
+        int done = 0;
+        for (final Record r : batch) {
+            if (r.callback != null) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        r.callback.onDurable(r.id);
+                    }
+                });
+            } else {
+                done++;
+            }
+        }
+        synchronized (this) {
+            obsoleteRecords += done * 2;
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Appends the records to the journal and syncs it. A failed write is cut off the journal, the next records would
+     * otherwise be appended to a partial one.
+     */
+    private void write(List<Record> batch) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        FileOutputStream outputStream = new FileOutputStream(new File(directory, JOURNAL), true);
+        FileChannel channel = outputStream.getChannel();
+        long size = -1;
+        try {
+            size = channel.size();
+            StringBuilder builder = new StringBuilder();
+            for (Record r : batch) {
+                builder.append(r.line).append('\n');
+            }
+            outputStream.write(builder.toString().getBytes(UTF_8));
+            outputStream.getFD().sync();
+        } catch (IOException e) {
+            if (size >= 0) {
+                try {
+                    channel.truncate(size);
+                } catch (IOException truncateError) {
+                    Log.e(TAG, truncateError.getMessage(), truncateError);
+                }
+            }
+            throw e;
+        } finally {
+            close(outputStream);
+        }
+    }
+
+    /**
+     * Rewrites the journal with the queued requests only once obsolete records outnumber them.
+     */
+    private void compactIfNeeded() {
+        List<JSONObject> live;
+        synchronized (this) {
+            if (obsoleteRecords < COMPACTION_MIN_OBSOLETE || obsoleteRecords < entries.size() || !pendingRecords.isEmpty()) {
+                return;
+            }
+            live = new ArrayList<>(entries.values());
+            obsoleteRecords = 0;
+        }
+        File compact = new File(directory, JOURNAL_COMPACT);
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(compact);
+            StringBuilder builder = new StringBuilder();
+            for (JSONObject entry : live) {
+                JSONObject record = new JSONObject(entry.toString());
+                record.put(NODE_OP, OP_ADD);
+                builder.append(record.toString()).append('\n');
+            }
+            outputStream.write(builder.toString().getBytes(UTF_8));
+            outputStream.getFD().sync();
+            close(outputStream);
+            outputStream = null;
+            if (!compact.renameTo(new File(directory, JOURNAL))) {
+                throw new IOException("Unable to replace the journal");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, e.getMessage(), e);
+        } finally {
+            close(outputStream);
+        }
+    }
+
+    /**
+     * Rebuilds the queue from the journal. A truncated last record, left by a crash during a write, is cut off the
+     * journal before anything is appended to it.
+     */
+    private void load() {
+        File journal = new File(directory, JOURNAL);
+        LinkedHashMap<Long, JSONObject> loadedEntries = new LinkedHashMap<>();
+        long maxId = 0;
+        int records = 0;
+        if (journal.exists()) {
+            BufferedReader reader = null;
+            try {
+                truncateIncompleteRecord(journal);
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JSONObject record;
+                    try {
+                        record = new JSONObject(line);
+                    } catch (JSONException e) {
+                        Log.w(TAG, "Skipping a corrupted journal record");
+                        continue;
+                    }
+                    records++;
+                    long id = record.optLong(NODE_ID);
+                    maxId = Math.max(maxId, id);
+                    if (OP_DONE.equals(record.optString(NODE_OP))) {
+                        loadedEntries.remove(id);
+                    } else {
+                        record.remove(NODE_OP);
+                        loadedEntries.put(id, record);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, e.getMessage(), e);
+            } finally {
+                close(reader);
+            }
+        }
+        synchronized (this) {
+            entries.putAll(loadedEntries);
+            nextId = maxId + 1;
+            obsoleteRecords = records - loadedEntries.size();
+            loaded = true;
+        }
+    }
+
+    /**
+     * Cuts the journal after its last line feed.
+     */
+    private static void truncateIncompleteRecord(File journal) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(journal, "rw");
+        try {
+            long length = file.length();
+            long end = length;
+            byte[] block = new byte[4096];
+            search:
+            while (end > 0) {
+                int count = (int) Math.min(block.length, end);
+                file.seek(end - count);
+                file.readFully(block, 0, count);
+                for (int i = count - 1; i >= 0; i--) {
+                    if (block[i] == '\n') {
+                        end -= count - 1 - i;
+                        break search;
+                    }
+                }
+                end -= count;
+            }
+            if (end < length) {
+                Log.w(TAG, "Truncating an incomplete journal record");
+                file.setLength(end);
+                file.getFD().sync();
+            }
+        } finally {
+            close(file);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.net.Uri;
+
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASResponse;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches the pages of a collection one after the other, following the startIndex and itemsPerPage of SCIM list
+ * responses or the rel="next" link of the Link header. The next page is requested before the current one is handed
+ * to the listener, so fetching overlaps delivery. Paging stops at the last page, at the page or item limit, or when
+ * stopped.
+ */
+class MASPaginator {
+    private static final String SCIM_START_INDEX = "startIndex";
+    private static final String SCIM_COUNT = "count";
+    private static final String SCIM_TOTAL_RESULTS = "totalResults";
+    private static final String SCIM_RESOURCES = "Resources";
+    private static final Pattern LINK_NEXT = Pattern.compile("<([^>]*)>[^,]*;\\s*rel=\"?([^\",]*\\s)?next[\\s\"]", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Requests a page from the gateway.
+     */
+    interface Fetcher {
+        MASRequestRegistry.Canceller fetch(String path, JSONObject parameters, MASCallback<MASResponse<Object>> callback) throws Exception;
+    }
+
+    /**
+     * Receives the pages in order, then the end of the paging.
+     */
+    interface Listener {
+        void onPage(int pageIndex, MASResponse<Object> response, int itemCount);
+
+        void onComplete(int pageCount, long itemCount, boolean exhausted);
+
+        void onError(Throwable throwable);
+    }
+
+    private final boolean scim;
+    private final int maxPages;
+    private final long maxItems;
+    private final boolean prefetch;
+    private final Fetcher fetcher;
+    private final Listener listener;
+    private MASRequestRegistry.Canceller inFlight;
+    private int requestedPages;
+    private int deliveredPages;
+    private long deliveredItems;
+    private boolean stopped;
+
+    /**
+     * @param scim     Whether the collection is a SCIM list, otherwise the Link header is followed.
+     * @param maxPages The maximum number of pages, 0 for no limit.
+     * @param maxItems The number of items after which no more page is requested, 0 for no limit.
+     * @param prefetch Whether the next page is requested before the current one is delivered.
+     */
+    MASPaginator(boolean scim, int maxPages, long maxItems, boolean prefetch, Fetcher fetcher, Listener listener) {
+        this.scim = scim;
+        this.maxPages = maxPages;
+        this.maxItems = maxItems;
+        this.prefetch = prefetch;
+        this.fetcher = fetcher;
+        this.listener = listener;
+    }
+
+    /**
+     * Requests the first page.
+     *
+     * @param itemsPerPage The SCIM page size to request, 0 to leave it to the gateway.
+     */
+    void start(String path, JSONObject parameters, int itemsPerPage) {
+        if (scim && itemsPerPage > 0) {
+            parameters = copy(parameters);
+            put(parameters, SCIM_COUNT, itemsPerPage);
+        }
+        fetch(path, parameters);
+    }
+
+    /**
+     * Stops paging, the page in flight is cancelled and no more page is delivered.
+     *
+     * @return false if paging had already ended.
+     */
+    boolean stop() {
+        MASRequestRegistry.Canceller canceller;
+        synchronized (this) {
+            if (stopped) {
+                return false;
+            }
+            stopped = true;
+            canceller = inFlight;
+            inFlight = null;
+        }
+        if (canceller != null) {
+            canceller.cancel();
+        }
+        return true;
+    }
+
+    private void fetch(final String path, final JSONObject parameters) {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            requestedPages++;
+        }
+        try {
+            MASRequestRegistry.Canceller canceller = fetcher.fetch(path, parameters, new MASCallback<MASResponse<Object>>() {
+                @Override
+                public void onSuccess(MASResponse<Object> masResponse) {
+                    onPage(path, parameters, masResponse);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    if (end()) {
+                        listener.onError(throwable);
+                    }
+                }
+            });
+            synchronized (this) {
+                if (!stopped) {
+                    inFlight = canceller;
+                }
+            }
+        } catch (Exception e) {
+            if (end()) {
+                listener.onError(e);
+            }
+        }
+    }
+
+    /**
+     * Pages are handled one at a time and in order, a prefetched page waits for the delivery of the previous one.
+     */
+    private synchronized void onPage(String path, JSONObject parameters, MASResponse<Object> masResponse) {
+        if (stopped) {
+            return;
+        }
+        inFlight = null;
+        Object body = getBody(masResponse);
+        JSONArray items = getItems(body);
+        int itemCount = items != null ? items.length() : 0;
+        String[] next;
+        Exception linkError = null;
+        try {
+            next = scim ? getScimNext(path, parameters, body, itemCount) : getLinkNext(path, masResponse);
+        } catch (MASCordovaException e) {
+            next = null;
+            linkError = e;
+        }
+        int pageIndex = deliveredPages;
+        boolean more = next != null
+                && (maxPages <= 0 || requestedPages < maxPages)
+                && (maxItems <= 0 || deliveredItems + itemCount < maxItems);
+        if (more && prefetch) {
+            fetch(next[0], toParameters(next, parameters));
+            if (stopped) {
+                // The next page failed right away, its error ended the paging
+                return;
+            }
+        }
+        deliveredPages++;
+        deliveredItems += itemCount;
+        listener.onPage(pageIndex, masResponse, itemCount);
+        if (linkError != null) {
+            stopped = true;
+            listener.onError(linkError);
+        } else if (!more) {
+            stopped = true;
+            listener.onComplete(deliveredPages, deliveredItems, next == null);
+        } else if (!prefetch) {
+            fetch(next[0], toParameters(next, parameters));
+        }
+    }
+
+    private synchronized boolean end() {
+        if (stopped) {
+            return false;
+        }
+        stopped = true;
+        inFlight = null;
+        return true;
+    }
+
+    synchronized int getDeliveredPages() {
+        return deliveredPages;
+    }
+
+    synchronized long getDeliveredItems() {
+        return deliveredItems;
+    }
+
+    /**
+     * @return The path of the next SCIM page and its startIndex, or null if the page is the last one.
+     */
+    private static String[] getScimNext(String path, JSONObject parameters, Object body, int itemCount) {
+        if (!(body instanceof JSONObject) || itemCount == 0) {
+            return null;
+        }
+        JSONObject list = (JSONObject) body;
+        long startIndex = list.optLong(SCIM_START_INDEX, parameters != null ? parameters.optLong(SCIM_START_INDEX, 1) : 1);
+        long nextIndex = startIndex + itemCount;
+        if (list.has(SCIM_TOTAL_RESULTS) && nextIndex > list.optLong(SCIM_TOTAL_RESULTS)) {
+            return null;
+        }
+        return new String[]{path, SCIM_START_INDEX, String.valueOf(nextIndex)};
+    }
+
+    /**
+     * @return The rel="next" link resolved against the path of the current page, with its query, or null if there is
+     * none.
+     * @throws MASCordovaException If the link points to another host than the current page.
+     */
+    private static String[] getLinkNext(String path, MASResponse<Object> masResponse) throws MASCordovaException {
+        Map<String, List<String>> headers = masResponse.getHeaders();
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!"Link".equalsIgnoreCase(header.getKey()) || header.getValue() == null) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                Matcher matcher = LINK_NEXT.matcher(value + " ");
+                if (matcher.find()) {
+                    return new String[]{resolve(path, matcher.group(1).trim())};
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A link to another host is not followed, its page would be requested with the credentials of the gateway.
+     */
+    private static String resolve(String path, String link) throws MASCordovaException {
+        int fragment = link.indexOf('#');
+        if (fragment >= 0) {
+            link = link.substring(0, fragment);
+        }
+        String host = Uri.parse(link).getHost();
+        if (host != null && !host.equalsIgnoreCase(MASPluginMAS.getRequestHost(path))) {
+            throw new MASCordovaException("The next page is on another host: " + host);
+        }
+        int query = path.indexOf('?');
+        String basePath = query >= 0 ? path.substring(0, query) : path;
+        if (link.isEmpty() || link.startsWith("?")) {
+            // java.net.URI follows RFC 2396 and would drop the last segment of the path
+            return basePath + link;
+        }
+        try {
+            return new URI(basePath).resolve(new URI(link)).toString();
+        } catch (URISyntaxException e) {
+            throw new MASCordovaException("Invalid next page link: " + link, e);
+        }
+    }
+
+    /**
+     * @return The parameters of the next page: for SCIM the current ones with the next startIndex, for links none as
+     * the query is part of the link.
+     */
+    private JSONObject toParameters(String[] next, JSONObject current) {
+        JSONObject parameters = scim ? copy(current) : new JSONObject();
+        for (int i = 1; i + 1 < next.length; i += 2) {
+            put(parameters, next[i], next[i + 1]);
+        }
+        return parameters;
+    }
+
+    private static Object getBody(MASResponse<Object> masResponse) {
+        Object content = masResponse.getBody() != null ? masResponse.getBody().getContent() : null;
+        if (content instanceof String) {
+            try {
+                return new JSONTokener((String) content).nextValue();
+            } catch (JSONException e) {
+                return content;
+            }
+        }
+        return content;
+    }
+
+    /**
+     * @return The items of the page: the SCIM Resources, or the body itself if it is an array.
+     */
+    private static JSONArray getItems(Object body) {
+        if (body instanceof JSONArray) {
+            return (JSONArray) body;
+        }
+        if (body instanceof JSONObject) {
+            return ((JSONObject) body).optJSONArray(SCIM_RESOURCES);
+        }
+        return null;
+    }
+
+    private static JSONObject copy(JSONObject parameters) {
+        JSONObject copy = new JSONObject();
+        if (parameters != null) {
+            Iterator<String> names = parameters.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                put(copy, name, parameters.opt(name));
+            }
+        }
+        return copy;
+    }
+
+    private static void put(JSONObject object, String name, Object value) {
+        try {
+            object.put(name, value);
+        } catch (JSONException ignore) {
+        }
+    }
+}
@@ -44,35 +44,36 @@ import static android.content.DialogInterface.BUTTON_POSITIVE;
 public class MASPluginApplication extends MASCordovaPlugin {
     private static final String TAG = MASPluginApplication.class.getCanonicalName();
 
-
     private List<MASApplication> masApplications = new ArrayList<MASApplication>();
     private WebView ENTERPRISE_BROWSER_WEBVIEW;
 
     @Override
     protected void pluginInitialize() {
         super.pluginInitialize();
-    }
-
-    @Override
-    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
-        try {
-            if (action.equalsIgnoreCase("getName")) {
+        registerAction("getName", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 getName(args, callbackContext);
-            } else if (action.equalsIgnoreCase("retrieveEnterpriseApps")) {
+            }
+        });
+        registerAction("retrieveEnterpriseApps", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 retrieveEnterpriseApps(args, callbackContext);
-            } else if (action.equalsIgnoreCase("enterpriseBrowserWebAppBackButtonHandler")) {
+            }
+        });
+        registerAction("enterpriseBrowserWebAppBackButtonHandler", ExecutionPolicy.UI_THREAD, new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 enterpriseBrowserWebAppBackButtonHandler(args, callbackContext);
-            } else if (action.equalsIgnoreCase("launchApp")) {
+            }
+        });
+        registerAction("launchApp", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 launchApp(args, callbackContext);
-            } else {
-                callbackContext.error("Invalid action");
-                return false;
             }
-        } catch (Throwable th) {
-            callbackContext.error(getError(th));
-
-        }
-        return true;
+        });
     }
 
     /**
@@ -119,18 +120,11 @@ public class MASPluginApplication extends MASCordovaPlugin {
      * Action to be taken if back button is pressed while an enterprise app is open
      */
     private void enterpriseBrowserWebAppBackButtonHandler(final JSONArray args, final CallbackContext callbackContext) {
-        this.cordova.getActivity().runOnUiThread(
-                new Runnable() {
-                    @Override
-                    public void run() {
-                        if (ENTERPRISE_BROWSER_WEBVIEW != null) {
-                            ((ViewGroup) ENTERPRISE_BROWSER_WEBVIEW.getParent()).removeView(ENTERPRISE_BROWSER_WEBVIEW);
-                            ENTERPRISE_BROWSER_WEBVIEW.destroy();
-                        }
-                        success(callbackContext, false);
-                    }
-                }
-        );
+        if (ENTERPRISE_BROWSER_WEBVIEW != null) {
+            ((ViewGroup) ENTERPRISE_BROWSER_WEBVIEW.getParent()).removeView(ENTERPRISE_BROWSER_WEBVIEW);
+            ENTERPRISE_BROWSER_WEBVIEW.destroy();
+        }
+        success(callbackContext, false);
     }
 
 /**
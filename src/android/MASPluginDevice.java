@@ -13,7 +13,6 @@ import com.ca.mas.foundation.MASDeviceAttributeOverflowException;
 
 import org.apache.cordova.CallbackContext;
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -26,45 +25,73 @@ public class MASPluginDevice extends MASCordovaPlugin {
     @Override
     protected void pluginInitialize() {
         super.pluginInitialize();
-    }
-
-    @Override
-    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
-        try {
-            if (action.equalsIgnoreCase("deregister")) {
+        registerAction("deregister", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 deregister(args, callbackContext);
-            } else if (action.equalsIgnoreCase("isDeviceRegistered")) {
+            }
+        });
+        registerAction("isDeviceRegistered", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 isDeviceRegistered(args, callbackContext);
-            } else if (action.equalsIgnoreCase("resetLocally")) {
+            }
+        });
+        registerAction("resetLocally", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 resetLocally(args, callbackContext);
-            } else if (action.equalsIgnoreCase("getDeviceIdentifier")) {
+            }
+        });
+        registerAction("getDeviceIdentifier", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 getDeviceIdentifier(args, callbackContext);
-            } else if (action.equalsIgnoreCase("getCurrentDevice")) {
+            }
+        });
+        registerAction("getCurrentDevice", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 getCurrentDevice(args, callbackContext);
-            } else if (action.equalsIgnoreCase("addAttribute")) {
+            }
+        });
+        registerAction("addAttribute", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 addAttribute(args, callbackContext);
-            } else if (action.equalsIgnoreCase("removeAttribute")) {
+            }
+        });
+        registerAction("removeAttribute", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 removeAttribute(args, callbackContext);
-            } else if (action.equalsIgnoreCase("removeAllAttributes")) {
+            }
+        });
+        registerAction("removeAllAttributes", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 removeAllAttributes(args, callbackContext);
-            } else if (action.equalsIgnoreCase("getAttribute")) {
+            }
+        });
+        registerAction("getAttribute", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 getAttribute(args, callbackContext);
-            } else if (action.equalsIgnoreCase("getAttributes")) {
+            }
+        });
+        registerAction("getAttributes", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 getAttributes(args, callbackContext);
-            } else {
-                callbackContext.error("Invalid action");
-                return false;
             }
-        } catch (Throwable th) {
-            callbackContext.error(getError(th));
-        }
-        return true;
+        });
     }
 
     /**
      * Deregisters a device from MAG server i.e. remove all registration info of this device on server
      */
     private void deregister(final JSONArray args, final CallbackContext callbackContext) {
+        clearResponseCache();
         MASDevice masDevice = MASDevice.getCurrentDevice();
         masDevice.deregister(new MASCallback<Void>() {
             @Override
@@ -81,6 +108,16 @@ public class MASPluginDevice extends MASCordovaPlugin {
         });
     }
 
+    /**
+     * The cached responses belong to the users of the device, they are dropped with its registration.
+     */
+    private static void clearResponseCache() {
+        MASResponseCache responseCache = MASResponseCache.getInstance();
+        if (responseCache != null) {
+            responseCache.clear();
+        }
+    }
+
     /**
      * This API returns a boolean state of device's current registration status on MAG server.
      */
@@ -98,6 +135,7 @@ public class MASPluginDevice extends MASCordovaPlugin {
      * Resets all the local cache of the device for this app i.e. all  tokens, credentials, states are flushed.
      */
     private void resetLocally(final JSONArray args, final CallbackContext callbackContext) {
+        clearResponseCache();
         MASDevice masDevice = MASDevice.getCurrentDevice();
         try {
             masDevice.resetLocally();
@@ -242,14 +280,23 @@ public class MASPluginDevice extends MASCordovaPlugin {
     }
 
     /**
-     * Fetch all attribute details of a device.
+     * Fetch all attribute details of a device, encoded as CBOR if the first argument is the cbor encoding.
      */
     private void getAttributes(final JSONArray args, final CallbackContext callbackContext) {
         try {
             MASDevice.getCurrentDevice().getAttributes(new MASCallback<JSONArray>() {
                 @Override
                 public void onSuccess(JSONArray jsonArray) {
-                    success(callbackContext, jsonArray, false);
+                    if (!MASCborEncoder.ENCODING.equals(args.optString(0))) {
+                        success(callbackContext, jsonArray, false);
+                        return;
+                    }
+                    try {
+                        success(callbackContext, MASCborEncoder.encode(jsonArray), false);
+                    } catch (MASCordovaException e) {
+                        Log.e(TAG, e.getMessage(), e);
+                        callbackContext.error(getError(e));
+                    }
                 }
 
                 @Override
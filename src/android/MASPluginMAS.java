@@ -14,12 +14,14 @@ import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Debug;
 import android.util.Base64;
 import android.util.Log;
 import android.util.Pair;
 import android.widget.ImageView;
 
 import com.ca.mas.core.cert.CertUtils;
+import com.ca.mas.core.error.TargetApiException;
 import com.ca.mas.core.service.MssoIntents;
 import com.ca.mas.core.token.JWTRS256Validator;
 import com.ca.mas.foundation.MAS;
@@ -49,15 +51,21 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MASPluginMAS extends MASCordovaPlugin {
     private static final String TAG = MASPluginMAS.class.getCanonicalName();
@@ -82,98 +90,509 @@ public class MASPluginMAS extends MASCordovaPlugin {
     private static final String NODE_INVALID_OTP = "isInvalidOtp";
     private static final String NODE_OTP_ERR = "errorMessage";
     private static final String NODE_OTP_CHANNELS = "channels";
+    private static final String NODE_INDEX = "index";
+    private static final String NODE_METHOD = "method";
+    private static final String NODE_TYPE = "type";
+    private static final String TYPE_PROGRESS = "progress";
+    private static final String TYPE_COMPLETE = "complete";
+    private static final String DIRECTORY_CACHE = "cache";
+    private static final String METHOD_GET = "GET";
+    private static final String METHOD_DELETE = "DELETE";
+    private static final String METHOD_PUT = "PUT";
+    private static final String METHOD_POST = "POST";
+    private static final String NODE_QUEUED = "queued";
+    private static final String NODE_QUEUE_ID = "queueId";
+    private static final String DIRECTORY_OFFLINE_QUEUE = "mas-offline-queue";
+    private static final long REPLAY_TIMEOUT_MILLIS = 60 * 1000;
+    private MASOfflineQueue offlineQueue;
+    private CallbackContext OFFLINE_QUEUE_LISTENER_CALLBACK;
+    private MASConnectivityMonitor connectivityMonitor;
+    private CallbackContext CONNECTIVITY_LISTENER_CALLBACK;
+    private static final String DIRECTORY_RESPONSE_CACHE = "mas-response-cache";
+    private MASResponseCache responseCache;
+    private final MASRequestCoalescer coalescer = new MASRequestCoalescer();
+    private final MASRequestScheduler scheduler = new MASRequestScheduler();
+    private final MASRequestRegistry requestRegistry = new MASRequestRegistry();
+    private final Map<String, MASEndpoint> endpoints = new ConcurrentHashMap<>();
+    private static final String TRACE_AUTH = "auth";
+    private static final String SPAN_LOGIN_PROMPT = "login prompt";
+    private static final String SPAN_OTP_PROMPT = "otp prompt";
+    private static final String FILE_TRACE_PREFIX = "mas-trace-";
+    private volatile long loginPromptTraceId;
+    private volatile long otpPromptTraceId;
 
     @Override
     protected void pluginInitialize() {
         super.pluginInitialize();
         mContext = webView.getContext();
-    }
-
-    @Override
-    public boolean execute(String action, final JSONArray args, final CallbackContext callbackContext) throws JSONException {
-        try {
-            if (action.equalsIgnoreCase("enableBrowserBasedAuthentication")) {
+        MASResponseCache.initialize(new File(mContext.getCacheDir(), DIRECTORY_RESPONSE_CACHE));
+        responseCache = MASResponseCache.getInstance();
+        offlineQueue = new MASOfflineQueue(new File(mContext.getFilesDir(), DIRECTORY_OFFLINE_QUEUE), new MASOfflineQueue.Sender() {
+            @Override
+            public void send(String method, JSONArray args, MASCallback<MASResponse<Object>> callback) {
+                try {
+                    newInvokeCommand(method).execute(toReplayArgs(args), callback);
+                } catch (Exception e) {
+                    Log.e(TAG, e.getMessage(), e);
+                    callback.onError(e);
+                }
+            }
+        }, new MASOfflineQueue.Listener() {
+            @Override
+            public void onReplayed(long id, String method, JSONArray args, MASResponse<Object> response, Throwable error) {
+                if (OFFLINE_QUEUE_LISTENER_CALLBACK == null) {
+                    return;
+                }
+                JSONObject result = new JSONObject();
+                try {
+                    result.put(NODE_QUEUE_ID, id);
+                    result.put(NODE_METHOD, method);
+                    result.put("path", args != null ? args.optString(0) : null);
+                    if (error != null) {
+                        result.put(NODE_ERROR, getInvokeError(error));
+                    } else {
+                        result.put(NODE_RESULT, getInvokeResponse(response));
+                    }
+                } catch (JSONException ignore) {
+                }
+                success(OFFLINE_QUEUE_LISTENER_CALLBACK, result, true);
+            }
+        });
+        connectivityMonitor = new MASConnectivityMonitor(mContext, new MASConnectivityMonitor.Listener() {
+            @Override
+            public void onStateChanged(JSONObject state, boolean gatewayRecovered) {
+                if (gatewayRecovered) {
+                    offlineQueue.replay(getCurrentUserName());
+                }
+                if (CONNECTIVITY_LISTENER_CALLBACK != null) {
+                    success(CONNECTIVITY_LISTENER_CALLBACK, state, true);
+                }
+            }
+        });
+        registerAction("enableBrowserBasedAuthentication", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 enableBrowserBasedAuthentication(callbackContext);
-            } else if (action.equalsIgnoreCase("useNativeMASUI")) {
+            }
+        });
+        registerAction("useNativeMASUI", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 useNativeMASUI(args, callbackContext);
-            } else if (action.equalsIgnoreCase("setConfigFileName")) {
+            }
+        });
+        registerAction("setConfigFileName", ExecutionPolicy.BACKGROUND, new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 setConfigFileName(args, callbackContext);
-            } else if (action.equalsIgnoreCase("setGrantFlow")) {
+            }
+        });
+        registerAction("setGrantFlow", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 setGrantFlow(args, callbackContext);
-            } else if (action.equalsIgnoreCase("completeAuthentication")) {
+            }
+        });
+        registerAction("completeAuthentication", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 completeAuthentication(args, callbackContext);
-            } else if (action.equalsIgnoreCase("doSocialLogin")) {
+            }
+        });
+        registerAction("doSocialLogin", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 doSocialLogin(args, callbackContext);
-            } else if (action.equalsIgnoreCase("cancelAuthentication")) {
+            }
+        });
+        registerAction("cancelAuthentication", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 cancelAuthentication(args, callbackContext);
-            } else if (action.equalsIgnoreCase("cancelRequest")) {
+            }
+        });
+        registerAction("cancelRequest", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 cancelRequest(args, callbackContext);
-            } else if (action.equalsIgnoreCase("generateAndSendOTP")) {
+            }
+        });
+        registerAction("generateAndSendOTP", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 generateAndSendOTP(args, callbackContext);
-            } else if (action.equalsIgnoreCase("cancelGenerateAndSendOTP")) {
+            }
+        });
+        registerAction("cancelGenerateAndSendOTP", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 cancelGenerateAndSendOTP(args, callbackContext);
-            } else if (action.equalsIgnoreCase("validateOTP")) {
+            }
+        });
+        registerAction("validateOTP", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 validateOTP(args, callbackContext);
-            } else if (action.equalsIgnoreCase("cancelOTPValidation")) {
+            }
+        });
+        registerAction("cancelOTPValidation", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 cancelOTPValidation(args, callbackContext);
-            } else if (action.equalsIgnoreCase("start")) {
+            }
+        });
+        registerAction("start", ExecutionPolicy.BACKGROUND, new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 start(args, callbackContext);
-            } else if (action.equalsIgnoreCase("startWithDefaultConfiguration")) {
+            }
+        });
+        registerAction("startWithDefaultConfiguration", ExecutionPolicy.BACKGROUND, new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 startWithDefaultConfiguration(args, callbackContext);
-            } else if (action.equalsIgnoreCase("startWithJSON")) {
+            }
+        });
+        registerAction("startWithJSON", ExecutionPolicy.BACKGROUND, new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 startWithJSON(args, callbackContext);
-            } else if (action.equalsIgnoreCase("startWithURL")) {
+            }
+        });
+        registerAction("startWithURL", ExecutionPolicy.BACKGROUND, new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 startWithURL(args, callbackContext);
-            } else if (action.equalsIgnoreCase("enablePKCE")) {
+            }
+        });
+        registerAction("enablePKCE", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 enablePKCE(args, callbackContext);
-            } else if (action.equalsIgnoreCase("isPKCEEnabled")) {
+            }
+        });
+        registerAction("isPKCEEnabled", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 isPKCEEnabled(args, callbackContext);
-            } else if (action.equalsIgnoreCase("enableJwksPreload")) {
+            }
+        });
+        registerAction("enableJwksPreload", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 enableJwksPreload(args, callbackContext);
-            } else if (action.equalsIgnoreCase("isJwksPreloadEnabled")) {
+            }
+        });
+        registerAction("isJwksPreloadEnabled", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 isJwksPreloadEnabled(args, callbackContext);
-            } else if (action.equalsIgnoreCase("stop")) {
+            }
+        });
+        registerAction("stop", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 stop(args, callbackContext);
-            } else if (action.equalsIgnoreCase("gatewayIsReachable")) {
+            }
+        });
+        registerAction("gatewayIsReachable", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 gatewayIsReachable(args, callbackContext);
-            } else if (action.equalsIgnoreCase("setSecurityConfiguration")) {
+            }
+        });
+        registerAction("setSecurityConfiguration", ExecutionPolicy.BACKGROUND, new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 setSecurityConfiguration(args, callbackContext);
-            } else if (action.equalsIgnoreCase("getFromPath")) {
+            }
+        });
+        registerAction("getFromPath", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 getFromPath(args, callbackContext);
-            } else if (action.equalsIgnoreCase("deleteFromPath")) {
+            }
+        });
+        registerAction("deleteFromPath", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 deleteFromPath(args, callbackContext);
-            } else if (action.equalsIgnoreCase("putToPath")) {
+            }
+        });
+        registerAction("putToPath", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 putToPath(args, callbackContext);
-            } else if (action.equalsIgnoreCase("postToPath")) {
+            }
+        });
+        registerAction("postToPath", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 postToPath(args, callbackContext);
-            } else if (action.equalsIgnoreCase("getMASState")) {
+            }
+        });
+        registerAction("downloadFromPath", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                downloadFromPath(args, callbackContext);
+            }
+        });
+        registerAction("invokeBatch", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                invokeBatch(args, callbackContext);
+            }
+        });
+        registerAction("getPagesFromPath", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                getPagesFromPath(args, callbackContext);
+            }
+        });
+        registerAction("getResponseCacheStats", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                success(callbackContext, responseCache.getStats(), false);
+            }
+        });
+        registerAction("clearResponseCache", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                responseCache.clear();
+                success(callbackContext, true, false);
+            }
+        });
+        registerAction("getCoalescingStats", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                success(callbackContext, coalescer.getStats(), false);
+            }
+        });
+        registerAction("setCoalescingOptOutHeaders", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                JSONArray headers = args.getJSONArray(0);
+                List<String> names = new ArrayList<>(headers.length());
+                for (int i = 0; i < headers.length(); i++) {
+                    names.add(headers.getString(i));
+                }
+                coalescer.setOptOutHeaders(names);
+                success(callbackContext, true, false);
+            }
+        });
+        registerAction("getSchedulerStats", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                success(callbackContext, scheduler.getStats(), false);
+            }
+        });
+        registerAction("setSchedulerLimits", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                scheduler.setLimits(args.optInt(0, 0), args.optInt(1, 0));
+                success(callbackContext, true, false);
+            }
+        });
+        registerAction("getCircuitBreakerState", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                success(callbackContext, scheduler.getCircuitBreaker().getState(), false);
+            }
+        });
+        registerAction("resetCircuitBreakers", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                scheduler.getCircuitBreaker().reset();
+                success(callbackContext, true, false);
+            }
+        });
+        registerAction("setCircuitBreakerPolicy", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                scheduler.getCircuitBreaker().setPolicy(args.optInt(0, 0), args.optLong(1, 0));
+                success(callbackContext, true, false);
+            }
+        });
+        registerAction("setRetryPolicy", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                scheduler.getRetryPolicy().setPolicy(args.getJSONObject(0));
+                success(callbackContext, scheduler.getRetryPolicy().getPolicy(), false);
+            }
+        });
+        registerAction("setOfflineQueueListener", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                OFFLINE_QUEUE_LISTENER_CALLBACK = callbackContext;
+                offlineQueue.replay(getCurrentUserName());
+            }
+        });
+        registerAction("getOfflineQueue", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                success(callbackContext, offlineQueue.list(), false);
+            }
+        });
+        registerAction("removeFromOfflineQueue", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                success(callbackContext, offlineQueue.remove(args.getLong(0)), false);
+            }
+        });
+        registerAction("replayOfflineQueue", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                offlineQueue.replay(getCurrentUserName());
+                success(callbackContext, true, false);
+            }
+        });
+        registerAction("setOfflineQueueReplayRate", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                offlineQueue.setReplayRate(args.getDouble(0));
+                success(callbackContext, true, false);
+            }
+        });
+        registerAction("setConnectivityListener", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                CONNECTIVITY_LISTENER_CALLBACK = callbackContext;
+                connectivityMonitor.start();
+                success(callbackContext, connectivityMonitor.getState(), true);
+            }
+        });
+        registerAction("removeConnectivityListener", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                connectivityMonitor.stop();
+                CONNECTIVITY_LISTENER_CALLBACK = null;
+                success(callbackContext, true, false);
+            }
+        });
+        registerAction("setConnectivityPolicy", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                connectivityMonitor.setPolicy(args.optLong(0, 0), args.optLong(1, 0));
+                success(callbackContext, true, false);
+            }
+        });
+        registerAction("cancelByTag", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                success(callbackContext, requestRegistry.cancelByTag(args.getString(0)), false);
+            }
+        });
+        registerAction("cancelAll", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                success(callbackContext, requestRegistry.cancelAll(), false);
+            }
+        });
+        registerAction("registerEndpoint", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                endpoints.put(args.getString(0), MASEndpoint.parse(args.getJSONObject(1)));
+                success(callbackContext, true, false);
+            }
+        });
+        registerAction("unregisterEndpoint", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                success(callbackContext, endpoints.remove(args.getString(0)) != null, false);
+            }
+        });
+        registerAction("invokeEndpoint", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                invokeEndpoint(args, callbackContext);
+            }
+        });
+        registerAction("getOutstandingRequests", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                success(callbackContext, requestRegistry.getStats(), false);
+            }
+        });
+        registerAction("setTracingEnabled", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                MASTracer.setEnabled(args.optBoolean(0), args.optInt(1, 0));
+                success(callbackContext, true, false);
+            }
+        });
+        registerAction("dumpTrace", ExecutionPolicy.BACKGROUND, new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                dumpTrace(args, callbackContext);
+            }
+        });
+        registerAction("countRequestAllocations", ExecutionPolicy.BACKGROUND, new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) throws Exception {
+                countRequestAllocations(args, callbackContext);
+            }
+        });
+        registerAction("getMASState", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 getMASState(args, callbackContext);
-            } else if (action.equalsIgnoreCase("authorizeQRCode")) {
+            }
+        });
+        registerAction("authorizeQRCode", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 authorizeQRCode(args, callbackContext);
-            } else if (action.equalsIgnoreCase("setAuthenticationListener")) {
+            }
+        });
+        registerAction("setAuthenticationListener", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 setAuthenticationListener(args, callbackContext);
-            } else if (action.equalsIgnoreCase("setOTPAuthenticationListener")) {
+            }
+        });
+        registerAction("setOTPAuthenticationListener", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 setOTPAuthenticationListener(args, callbackContext);
-            } else if (action.equalsIgnoreCase("setOTPChannelSelectorListener")) {
+            }
+        });
+        registerAction("setOTPChannelSelectorListener", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 setOTPChannelSelectorListener(args, callbackContext);
-            } else if (action.equalsIgnoreCase("initClaims")) {
+            }
+        });
+        registerAction("initClaims", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 success(callbackContext, false);
-            } else if (action.equalsIgnoreCase("signWithClaims")) {
+            }
+        });
+        registerAction("signWithClaims", ExecutionPolicy.BACKGROUND, new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 signWithClaims(args, callbackContext);
-            } else if (action.equalsIgnoreCase("enableIdTokenValidation")) {
+            }
+        });
+        registerAction("enableIdTokenValidation", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 enableIdTokenValidation(args, callbackContext);
-            } else if (action.equalsIgnoreCase("isIdTokenValidationEnabled")) {
+            }
+        });
+        registerAction("isIdTokenValidationEnabled", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 isIdTokenValidationEnabled(args, callbackContext);
-            } else {
-                callbackContext.error("Invalid action");
-                return false;
             }
-        } catch (Throwable th) {
-            callbackContext.error(getError(th));
-        }
-        return true;
+        });
     }
 
+    @Override
+    public void onDestroy() {
+        connectivityMonitor.stop();
+        super.onDestroy();
+    }
 
     private void enableBrowserBasedAuthentication(final CallbackContext callbackContext) {
         try {
@@ -186,7 +605,6 @@ public class MASPluginMAS extends MASCordovaPlugin {
         success(callbackContext, true, false);
     }
 
-
     private void useNativeMASUI(final JSONArray args, final CallbackContext callbackContext) {
         MAS.setAuthenticationListener(new MASAuthenticationListener() {
             @Override
@@ -265,15 +683,19 @@ public class MASPluginMAS extends MASCordovaPlugin {
             callbackContext.error(getError(new MASCordovaException("Invalid credentials provided")));
             return;
         }
+        endLoginPrompt();
+        final long startedAt = System.nanoTime();
         MASUser.login(username, password.toCharArray(), new MASCallback<MASUser>() {
             @Override
             public void onSuccess(MASUser masUser) {
+                MASTracer.complete(TRACE_AUTH, "MASUser.login", startedAt);
                 success(callbackContext, true);
                 MASUtil.getQrCode().stop();
             }
 
             @Override
             public void onError(Throwable error) {
+                MASTracer.complete(TRACE_AUTH, "MASUser.login", startedAt);
                 Log.e(TAG, error.getMessage(), error);
                 callbackContext.error(getError(error));
 
@@ -281,6 +703,22 @@ public class MASPluginMAS extends MASCordovaPlugin {
         });
     }
 
+    private void endLoginPrompt() {
+        long traceId = loginPromptTraceId;
+        if (traceId != 0) {
+            loginPromptTraceId = 0;
+            MASTracer.end(TRACE_AUTH, SPAN_LOGIN_PROMPT, traceId);
+        }
+    }
+
+    private void endOtpPrompt() {
+        long traceId = otpPromptTraceId;
+        if (traceId != 0) {
+            otpPromptTraceId = 0;
+            MASTracer.end(TRACE_AUTH, SPAN_OTP_PROMPT, traceId);
+        }
+    }
+
     private void doSocialLogin(final JSONArray args, final CallbackContext callbackContext) {
         String providerName = null;
         try {
@@ -312,6 +750,7 @@ public class MASPluginMAS extends MASCordovaPlugin {
                 callbackContext.error("request Id is  empty");
             }
             String cancellationMessage = args.optString(1, "Request cancelled");
+            endLoginPrompt();
             MASUtil.getQrCode().stop();
             Bundle bundle = new Bundle();
             bundle.putString(REQUEST_CANCELLATION_MSG_KEY, cancellationMessage);
@@ -323,11 +762,19 @@ public class MASPluginMAS extends MASCordovaPlugin {
         }
     }
 
+    /**
+     * Cancels a request by the handle returned by the JavaScript layer, or by its MAS request id. A handle whose request
+     * already ended is answered with false, it is an ordinary race with the response.
+     */
     private void cancelRequest(final JSONArray args, final CallbackContext callbackContext) {
         try {
             String requestId = args.getString(0);
-            MAS.cancelRequest(Long.getLong(requestId));
-            success(callbackContext, true, false);
+            boolean cancelled = requestRegistry.cancel(requestId);
+            if (!cancelled && requestId.matches("\\d+")) {
+                MAS.cancelRequest(Long.parseLong(requestId));
+                cancelled = true;
+            }
+            success(callbackContext, cancelled, false);
         } catch (Exception e) {
             Log.e(TAG, e.getMessage(), e);
             callbackContext.error(getError(e));
@@ -345,14 +792,18 @@ public class MASPluginMAS extends MASCordovaPlugin {
                 }
             }
 
+            endOtpPrompt();
+            final long startedAt = System.nanoTime();
             masOtpAuthenticationHandlerStatic.deliver(channelResult.toString(), new MASCallback<Void>() {
                 @Override
                 public void onSuccess(Void result) {
+                    MASTracer.complete(TRACE_AUTH, "otp deliver", startedAt);
                     success(callbackContext, "true", false);
                 }
 
                 @Override
                 public void onError(Throwable e) {
+                    MASTracer.complete(TRACE_AUTH, "otp deliver", startedAt);
                     callbackContext.error(getError(e));
                 }
             });
@@ -364,6 +815,7 @@ public class MASPluginMAS extends MASCordovaPlugin {
 
     private void cancelGenerateAndSendOTP(final JSONArray args, final CallbackContext callbackContext) {
         try {
+            endOtpPrompt();
             masOtpAuthenticationHandlerStatic.cancel();
             success(callbackContext, true, false);
         } catch (Exception e) {
@@ -375,6 +827,7 @@ public class MASPluginMAS extends MASCordovaPlugin {
     private void validateOTP(final JSONArray args, final CallbackContext callbackContext) {
         try {
             String otp = args.getString(0);
+            endOtpPrompt();
             masOtpAuthenticationHandlerStatic.proceed(mContext, otp);
             success(callbackContext, true, false);
         } catch (Exception e) {
@@ -385,6 +838,7 @@ public class MASPluginMAS extends MASCordovaPlugin {
 
     private void cancelOTPValidation(final JSONArray args, final CallbackContext callbackContext) {
         try {
+            endOtpPrompt();
             masOtpAuthenticationHandlerStatic.cancel();
             success(callbackContext, true, false);
         } catch (Exception e) {
@@ -504,9 +958,18 @@ public class MASPluginMAS extends MASCordovaPlugin {
         }
     }
 
+    /**
+     * Answers from the last gateway probe while it is younger than the time to live of the connectivity monitor,
+     * unless the first argument forces a new probe.
+     */
     private void gatewayIsReachable(final JSONArray args, final CallbackContext callbackContext) {
+        Boolean cached = connectivityMonitor.getCachedReachability();
+        if (cached != null && !args.optBoolean(0, false)) {
+            success(callbackContext, cached, false);
+            return;
+        }
         try {
-            MAS.gatewayIsReachable(new MASCallback<Boolean>() {
+            connectivityMonitor.probe(new MASCallback<Boolean>() {
                 @Override
                 public void onSuccess(Boolean result) {
                     success(callbackContext, result, false);
@@ -574,61 +1037,649 @@ public class MASPluginMAS extends MASCordovaPlugin {
     }
 
     private void getFromPath(final JSONArray args, final CallbackContext callbackContext) {
-        InvokeCommand command = new InvokeCommand() {
-            @Override
-            public MASRequest.MASRequestBuilder getRequestBuilder(String path, JSONObject parameters, int requestType, int responseType) throws Exception {
-                return new MASRequest.MASRequestBuilder(getUri(path, parameters)).get();
-            }
-        };
-        command.execute(mContext, args, callbackContext);
+        newInvokeCommand(METHOD_GET).execute(mContext, args, callbackContext);
     }
 
     private void deleteFromPath(final JSONArray args, final CallbackContext callbackContext) {
-        InvokeCommand command = new InvokeCommand() {
-            @Override
-            public MASRequest.MASRequestBuilder getRequestBuilder(String path, JSONObject parameters, int requestType, int responseType) throws Exception {
-                return new MASRequest.MASRequestBuilder(getUri(path, parameters)).delete(null);
-            }
-        };
-        command.execute(mContext, args, callbackContext);
+        newInvokeCommand(METHOD_DELETE).execute(mContext, args, callbackContext);
     }
 
     private void putToPath(final JSONArray args, final CallbackContext callbackContext) {
-        InvokeCommand command = new InvokeCommand() {
-            @Override
-            public MASRequest.MASRequestBuilder getRequestBuilder(String path, JSONObject parameters, int requestType, int responseType) throws Exception {
-                MASRequest.MASRequestBuilder builder = new MASRequest.MASRequestBuilder(new URI(path));
-                MASRequestBody requestBody = getRequestBody(requestType, parameters);
-                if (requestBody != null) {
-                    builder.put(requestBody);
+        newInvokeCommand(METHOD_PUT).execute(mContext, args, callbackContext);
+    }
+
+    private void postToPath(final JSONArray args, final CallbackContext callbackContext) {
+        newInvokeCommand(METHOD_POST).execute(mContext, args, callbackContext);
+    }
+
+    /**
+     * Downloads the response of an HTTP GET straight into a file under the application files or cache directory.
+     * Progress is reported on the kept callback, the final result only carries the file path and metadata.
+     */
+    private void downloadFromPath(final JSONArray args, final CallbackContext callbackContext) {
+        try {
+            String path = args.getString(0);
+            String fileName = new File(args.getString(4)).getName();
+            if (fileName.isEmpty()) {
+                throw new MASCordovaException("Invalid file name provided");
+            }
+            File directory = DIRECTORY_CACHE.equalsIgnoreCase(args.optString(5, null)) ? mContext.getCacheDir() : mContext.getFilesDir();
+            final MASFileResponseBody fileBody = new MASFileResponseBody(new File(directory, fileName), newProgressListener(callbackContext));
+            InvokeCommand command = new InvokeCommand() {
+                @Override
+                public MASRequest.MASRequestBuilder getRequestBuilder(String path, JSONObject parameters, int requestType, int responseType) throws Exception {
+                    MASRequest.MASRequestBuilder builder = new MASRequest.MASRequestBuilder(getUri(path, parameters)).get();
+                    builder.responseBody(fileBody);
+                    return builder;
+                }
+
+                @Override
+                protected String getMethod() {
+                    return METHOD_GET;
+                }
+
+                @Override
+                protected boolean sendResponse(MASResponse<Object> masResponse) {
+                    JSONObject result = fileBody.getContent() != null ? fileBody.getContent() : new JSONObject();
+                    try {
+                        result.put(NODE_TYPE, TYPE_COMPLETE);
+                        result.put("MASResponseInfoHeaderInfoKey", getInvokeResponseHeaders(masResponse));
+                    } catch (JSONException ignore) {
+                    }
+                    success(callbackContext, result, false);
+                    return true;
                 }
-                MASResponseBody responseBody = getResponseBody(responseType);
-                if (responseBody != null) {
-                    builder.responseBody(responseBody);
+
+                @Override
+                protected void onFailed() {
+                    fileBody.discard();
+                }
+            };
+            JSONArray invokeArgs = new JSONArray();
+            invokeArgs.put(path);
+            invokeArgs.put(args.opt(1));
+            invokeArgs.put(args.opt(2));
+            invokeArgs.put(InvokeCommand.MAS_REQUEST_RESPONSE_TYPE_JSON);
+            invokeArgs.put(InvokeCommand.MAS_REQUEST_RESPONSE_TYPE_JSON);
+            invokeArgs.put(args.optBoolean(3, false));
+            invokeArgs.put(args.opt(6));
+            command.execute(mContext, invokeArgs, callbackContext);
+        } catch (Exception e) {
+            Log.e(TAG, e.getMessage(), e);
+            callbackContext.error(getError(e));
+        }
+    }
+
+    /**
+     * @return A listener which reports the progress of a transfer on the kept callback.
+     */
+    private MASProgressListener newProgressListener(final CallbackContext callbackContext) {
+        return new MASProgressListener() {
+            @Override
+            public void onProgress(long bytesTransferred, long totalBytes) {
+                JSONObject progress = new JSONObject();
+                try {
+                    progress.put(NODE_TYPE, TYPE_PROGRESS);
+                    progress.put("bytesTransferred", bytesTransferred);
+                    progress.put("totalBytes", totalBytes);
+                } catch (JSONException ignore) {
                 }
-                return builder;
+                success(callbackContext, progress, true);
             }
         };
-        command.execute(mContext, args, callbackContext);
     }
 
-    private void postToPath(final JSONArray args, final CallbackContext callbackContext) {
-        InvokeCommand command = new InvokeCommand() {
+    /**
+     * Invokes several APIs on the Gateway in one bridge call. The first argument is an array of request specs
+     * <code>{method, path, parameters, headers, requestType, responseType, isPublic, options}</code>, the second one
+     * tells whether every result is sent back as soon as it completes or all of them at once when the batch is done.
+     * Every request is sent like a single one, only streaming and offline deferral are not available in a batch.
+     */
+    private void invokeBatch(final JSONArray args, final CallbackContext callbackContext) {
+        final JSONArray specs;
+        try {
+            specs = args.getJSONArray(0);
+        } catch (JSONException e) {
+            callbackContext.error(getError(new MASCordovaException("Invalid batch requests provided", e)));
+            return;
+        }
+        final boolean streamResults = args.optBoolean(1, false);
+        final int count = specs.length();
+        if (count == 0) {
+            success(callbackContext, new JSONArray(), false);
+            return;
+        }
+        final JSONArray results = new JSONArray();
+        final AtomicInteger remaining = new AtomicInteger(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            final JSONObject spec = specs.optJSONObject(i);
+            final InvokeCommand command = spec != null ? newInvokeCommand(spec.optString(NODE_METHOD, METHOD_GET)) : null;
+            MASCallback<MASResponse<Object>> callback = new MASCallback<MASResponse<Object>>() {
+                @Override
+                public void onSuccess(MASResponse<Object> masResponse) {
+                    complete(NODE_RESULT, getInvokeResponse(masResponse, command.projection));
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    complete(NODE_ERROR, getInvokeError(throwable));
+                }
+
+                private void complete(String node, JSONObject value) {
+                    JSONObject entry = new JSONObject();
+                    try {
+                        entry.put(NODE_INDEX, index);
+                        entry.put(node, value);
+                    } catch (JSONException ignore) {
+                    }
+                    boolean last = remaining.decrementAndGet() == 0;
+                    if (streamResults) {
+                        success(callbackContext, entry, !last);
+                        return;
+                    }
+                    synchronized (results) {
+                        try {
+                            results.put(index, entry);
+                        } catch (JSONException ignore) {
+                        }
+                    }
+                    if (last) {
+                        success(callbackContext, results, false);
+                    }
+                }
+            };
+            try {
+                if (spec == null) {
+                    throw new MASCordovaException("Invalid batch request at index " + i);
+                }
+                command.execute(toInvokeArgs(spec), callback);
+            } catch (Exception e) {
+                Log.e(TAG, e.getMessage(), e);
+                callback.onError(e);
+            }
+        }
+    }
+
+    /**
+     * Invokes an endpoint registered with registerEndpoint. The arguments are the endpoint name, the placeholder
+     * values, the parameters or body and the request options, which override the registered ones.
+     */
+    private void invokeEndpoint(final JSONArray args, final CallbackContext callbackContext) {
+        try {
+            String name = args.getString(0);
+            MASEndpoint endpoint = endpoints.get(name);
+            if (endpoint == null) {
+                throw new MASCordovaException("Endpoint " + name + " is not registered");
+            }
+            newInvokeCommand(endpoint.getMethod()).execute(endpoint, args.optJSONObject(1), args.opt(2), args.optJSONObject(3), callbackContext);
+        } catch (Exception e) {
+            Log.e(TAG, e.getMessage(), e);
+            callbackContext.error(getError(e));
+        }
+    }
+
+    /**
+     * Converts a batch request spec to the positional arguments read by {@link InvokeCommand}.
+     */
+    private static JSONArray toInvokeArgs(JSONObject spec) throws JSONException {
+        JSONArray args = new JSONArray();
+        args.put(spec.getString("path"));
+        args.put(spec.opt("parameters"));
+        args.put(spec.opt("headers"));
+        args.put(spec.optInt("requestType", InvokeCommand.MAS_REQUEST_RESPONSE_TYPE_JSON));
+        args.put(spec.optInt("responseType", InvokeCommand.MAS_REQUEST_RESPONSE_TYPE_JSON));
+        args.put(spec.optBoolean("isPublic", false));
+        args.put(spec.opt("options"));
+        return args;
+    }
+
+    /**
+     * Converts the arguments of a queued request to the ones it is replayed with: in the background, without retry and
+     * with a deadline so that a request which hangs does not hold up the queue. The handle of the original request
+     * does not apply to its replay.
+     */
+    private static JSONArray toReplayArgs(JSONArray args) throws JSONException {
+        JSONArray replayArgs = new JSONArray();
+        for (int i = 0; i < args.length(); i++) {
+            replayArgs.put(i, args.opt(i));
+        }
+        JSONObject options = args.optJSONObject(6);
+        JSONObject replayOptions = new JSONObject();
+        if (options != null) {
+            Iterator<String> names = options.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                replayOptions.put(name, options.opt(name));
+            }
+        }
+        replayOptions.remove("handle");
+        replayOptions.put("priority", MASRequestScheduler.PRIORITY_BACKGROUND);
+        replayOptions.put("retry", false);
+        if (replayOptions.optLong("timeoutMillis", 0) <= 0) {
+            replayOptions.put("timeoutMillis", REPLAY_TIMEOUT_MILLIS);
+        }
+        replayArgs.put(6, replayOptions);
+        return replayArgs;
+    }
+
+    /**
+     * Counts the allocations of the calling thread while the arguments of a gateway invocation are marshalled into a
+     * request, from the parsing of the path, parameters and headers to the built request, which is not sent.
+     */
+    @SuppressWarnings("deprecation")
+    private void countRequestAllocations(final JSONArray args, final CallbackContext callbackContext) throws Exception {
+        String method = args.getString(0);
+        JSONArray requestArgs = args.getJSONArray(1);
+        int iterations = Math.max(1, args.optInt(2, 1));
+        // Warmed up first, class loading and lazy initialization are not counted
+        newInvokeCommand(method).prepareRequest(requestArgs).build();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < iterations; i++) {
+                newInvokeCommand(method).prepareRequest(requestArgs).build();
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        JSONObject result = new JSONObject();
+        result.put("iterations", iterations);
+        result.put("allocationsPerRequest", (double) Debug.getThreadAllocCount() / iterations);
+        result.put("bytesPerRequest", (double) Debug.getThreadAllocSize() / iterations);
+        success(callbackContext, result, false);
+    }
+
+    /**
+     * Writes the recorded spans to a file of the cache directory, in the Chrome trace-event format.
+     */
+    private void dumpTrace(final JSONArray args, final CallbackContext callbackContext) throws Exception {
+        String fileName = args.optString(0, null);
+        if (fileName == null || fileName.isEmpty() || "null".equals(fileName)) {
+            fileName = FILE_TRACE_PREFIX + System.currentTimeMillis() + ".json";
+        } else if (fileName.contains(File.separator)) {
+            throw new MASCordovaException("Invalid file name");
+        }
+        File file = new File(mContext.getCacheDir(), fileName);
+        int spanCount = MASTracer.dump(file);
+        JSONObject result = new JSONObject();
+        result.put("path", file.getAbsolutePath());
+        result.put("spanCount", spanCount);
+        success(callbackContext, result, false);
+    }
+
+    /**
+     * Pages through a collection with GET requests. The arguments are the path, parameters, headers, response type
+     * and isPublic flag of the first request, then the paging options. Every page is sent back as soon as it is
+     * received, followed by a summary once paging ends.
+     */
+    private void getPagesFromPath(final JSONArray args, final CallbackContext callbackContext) throws Exception {
+        final String path = args.getString(0);
+        JSONObject parameters = args.optJSONObject(1);
+        final JSONObject headers = args.optJSONObject(2);
+        final int responseType = args.optInt(3, InvokeCommand.MAS_REQUEST_RESPONSE_TYPE_JSON);
+        final boolean isPublic = args.optBoolean(4, false);
+        JSONObject options = args.optJSONObject(5);
+        if (options == null) {
+            options = new JSONObject();
+        }
+        // Every page is sent like a single request, with the same priority, retry and timeout options
+        final JSONObject pageOptions = new JSONObject();
+        pageOptions.put("priority", options.optInt("priority", MASRequestScheduler.PRIORITY_NORMAL));
+        if (options.has("retry")) {
+            pageOptions.put("retry", options.optBoolean("retry"));
+        }
+        if (options.has("timeoutMillis")) {
+            pageOptions.put("timeoutMillis", options.optLong("timeoutMillis"));
+        }
+        boolean scim = responseType == InvokeCommand.MAS_REQUEST_RESPONSE_TYPE_SCIM_JSON;
+        PageRequest pageRequest = new PageRequest(callbackContext,
+                MASResponseProjection.parse(options.optJSONArray("fields"), options.optJSONArray("responseHeaders")));
+        pageRequest.paginator = new MASPaginator(scim, options.optInt("maxPages", 0), options.optLong("maxItems", 0),
+                options.optBoolean("prefetch", true), new MASPaginator.Fetcher() {
             @Override
-            public MASRequest.MASRequestBuilder getRequestBuilder(String path, JSONObject parameters, int requestType, int responseType) throws Exception {
-                MASRequest.MASRequestBuilder builder = new MASRequest.MASRequestBuilder(new URI(path));
-                MASRequestBody requestBody = getRequestBody(requestType, parameters);
-                if (requestBody != null) {
-                    builder.post(requestBody);
+            public MASRequestRegistry.Canceller fetch(String pagePath, JSONObject pageParameters, MASCallback<MASResponse<Object>> callback) throws Exception {
+                JSONArray pageArgs = new JSONArray();
+                pageArgs.put(pagePath);
+                pageArgs.put(pageParameters);
+                pageArgs.put(headers);
+                pageArgs.put(InvokeCommand.MAS_REQUEST_RESPONSE_TYPE_JSON);
+                pageArgs.put(responseType);
+                pageArgs.put(isPublic);
+                pageArgs.put(pageOptions);
+                return newInvokeCommand(METHOD_GET).execute(pageArgs, callback);
+            }
+        }, pageRequest);
+        pageRequest.entry = requestRegistry.register(options.optString("handle", null), options.optString("tag", null), 0, pageRequest);
+        pageRequest.entry.setCanceller(pageRequest);
+        pageRequest.paginator.start(path, parameters, options.optInt("itemsPerPage", 0));
+    }
+
+    /**
+     * Delivers the pages of a getPagesFromPath call. Cancelling the request stops the paging, the summary then tells
+     * that it was stopped.
+     */
+    private class PageRequest implements MASPaginator.Listener, MASRequestRegistry.Listener, MASRequestRegistry.Canceller {
+        private final CallbackContext callbackContext;
+        private final MASResponseProjection projection;
+        private MASPaginator paginator;
+        private MASRequestRegistry.Entry entry;
+
+        private PageRequest(CallbackContext callbackContext, MASResponseProjection projection) {
+            this.callbackContext = callbackContext;
+            this.projection = projection;
+        }
+
+        @Override
+        public void onPage(int pageIndex, MASResponse<Object> response, int itemCount) {
+            if (entry.isDone()) {
+                return;
+            }
+            JSONObject page = getInvokeResponse(response, projection);
+            try {
+                page.put("type", "page");
+                page.put("pageIndex", pageIndex);
+                page.put("itemCount", itemCount);
+            } catch (JSONException ignore) {
+            }
+            success(callbackContext, page, true);
+        }
+
+        @Override
+        public void onComplete(int pageCount, long itemCount, boolean exhausted) {
+            if (entry.complete()) {
+                success(callbackContext, getSummary(pageCount, itemCount, exhausted, false), false);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (entry.complete()) {
+                callbackContext.error(getInvokeError(throwable));
+            }
+        }
+
+        @Override
+        public void cancel() {
+            paginator.stop();
+        }
+
+        @Override
+        public void onCancelled(Throwable reason) {
+            success(callbackContext, getSummary(paginator.getDeliveredPages(), paginator.getDeliveredItems(), false, true), false);
+        }
+
+        private JSONObject getSummary(int pageCount, long itemCount, boolean exhausted, boolean stopped) {
+            JSONObject summary = new JSONObject();
+            try {
+                summary.put("type", "complete");
+                summary.put("pageCount", pageCount);
+                summary.put("itemCount", itemCount);
+                summary.put("exhausted", exhausted);
+                summary.put("stopped", stopped);
+            } catch (JSONException ignore) {
+            }
+            return summary;
+        }
+    }
+
+    private InvokeCommand newInvokeCommand(String method) {
+        if (METHOD_GET.equalsIgnoreCase(method)) {
+            return new InvokeCommand() {
+                @Override
+                public MASRequest.MASRequestBuilder getRequestBuilder(String path, JSONObject parameters, int requestType, int responseType) throws Exception {
+                    return new MASRequest.MASRequestBuilder(getUri(path, parameters)).get();
+                }
+
+                @Override
+                protected boolean isSafe() {
+                    return true;
+                }
+
+                @Override
+                protected boolean isIdempotent() {
+                    return true;
+                }
+
+                @Override
+                protected String getMethod() {
+                    return METHOD_GET;
+                }
+            };
+        } else if (METHOD_DELETE.equalsIgnoreCase(method)) {
+            return new InvokeCommand() {
+                @Override
+                public MASRequest.MASRequestBuilder getRequestBuilder(String path, JSONObject parameters, int requestType, int responseType) throws Exception {
+                    return new MASRequest.MASRequestBuilder(getUri(path, parameters)).delete(null);
                 }
-                MASResponseBody responseBody = getResponseBody(responseType);
-                if (responseBody != null) {
-                    builder.responseBody(responseBody);
+
+                @Override
+                protected String getMethod() {
+                    return METHOD_DELETE;
                 }
-                return builder;
+
+                @Override
+                protected boolean isIdempotent() {
+                    return true;
+                }
+            };
+        } else if (METHOD_PUT.equalsIgnoreCase(method)) {
+            return new InvokeCommand() {
+                @Override
+                public MASRequest.MASRequestBuilder getRequestBuilder(String path, JSONObject parameters, int requestType, int responseType) throws Exception {
+                    MASRequest.MASRequestBuilder builder = new MASRequest.MASRequestBuilder(new URI(path));
+                    MASRequestBody requestBody = getRequestBody(requestType, parameters);
+                    if (requestBody != null) {
+                        builder.put(requestBody);
+                    }
+                    MASResponseBody responseBody = getResponseBody(responseType);
+                    if (responseBody != null) {
+                        builder.responseBody(responseBody);
+                    }
+                    return builder;
+                }
+
+                @Override
+                protected boolean isIdempotent() {
+                    return true;
+                }
+
+                @Override
+                protected String getMethod() {
+                    return METHOD_PUT;
+                }
+            };
+        } else if (METHOD_POST.equalsIgnoreCase(method)) {
+            return new InvokeCommand() {
+                @Override
+                public MASRequest.MASRequestBuilder getRequestBuilder(String path, JSONObject parameters, int requestType, int responseType) throws Exception {
+                    MASRequest.MASRequestBuilder builder = new MASRequest.MASRequestBuilder(new URI(path));
+                    MASRequestBody requestBody = getRequestBody(requestType, parameters);
+                    if (requestBody != null) {
+                        builder.post(requestBody);
+                    }
+                    MASResponseBody responseBody = getResponseBody(responseType);
+                    if (responseBody != null) {
+                        builder.responseBody(responseBody);
+                    }
+                    return builder;
+                }
+
+                @Override
+                protected String getMethod() {
+                    return METHOD_POST;
+                }
+            };
+        }
+        throw new IllegalArgumentException("Unsupported HTTP method " + method);
+    }
+
+    /**
+     * Formats the error of a gateway invocation, a cancelled request only carries its cancellation message.
+     */
+    private JSONObject getInvokeError(Throwable throwable) {
+        if (throwable instanceof MAS.RequestCancelledException) {
+            JSONObject error = new JSONObject();
+            String errorMessage = "Request Cancelled";
+            try {
+                if ((((MAS.RequestCancelledException) throwable).getData() != null &&
+                        ((MAS.RequestCancelledException) throwable).getData().get(REQUEST_CANCELLATION_MSG_KEY) != null)) {
+                    errorMessage = (String) ((MAS.RequestCancelledException) throwable).getData().get(REQUEST_CANCELLATION_MSG_KEY);
+                }
+                error.put("errorMessage", errorMessage);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+            return error;
+        }
+        return getError(throwable);
+    }
+
+    /**
+     * @return The name of the authenticated user, null if none.
+     */
+    private static String getCurrentUserName() {
+        MASUser currentUser = MASUser.getCurrentUser();
+        return currentUser != null ? currentUser.getUserName() : null;
+    }
+
+    /**
+     * @return The host of an absolute request path, or the gateway host for a path relative to the gateway.
+     */
+    static String getRequestHost(String path) {
+        String host = Uri.parse(path).getHost();
+        if (host != null) {
+            return host;
+        }
+        try {
+            return MASConfiguration.getCurrentConfiguration().getGatewayHostName();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /**
+     * @return The response of the gateway if the error is a 304 Not Modified answer to a conditional request, null otherwise.
+     */
+    private static MASResponse getNotModifiedResponse(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TargetApiException) {
+                MASResponse response = ((TargetApiException) cause).getResponse();
+                return response != null && response.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED ? response : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return A result cached by the response cache as a response of the gateway.
+     */
+    private static MASResponse<Object> toResponse(final JSONObject result) {
+        final Map<String, List<String>> headers = new HashMap<>();
+        JSONObject headerJson = result.optJSONObject("MASResponseInfoHeaderInfoKey");
+        if (headerJson != null) {
+            Iterator<String> names = headerJson.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                headers.put(name, Collections.singletonList(headerJson.optString(name)));
+            }
+        }
+        final MASResponseBody<Object> body = new MASResponseBody<Object>() {
+            @Override
+            public Object getContent() {
+                return result.opt("MASResponseInfoBodyInfoKey");
             }
         };
-        command.execute(mContext, args, callbackContext);
+        return new MASResponse<Object>() {
+            @Override
+            public Map<String, List<String>> getHeaders() {
+                return headers;
+            }
+
+            @Override
+            public int getResponseCode() {
+                return HttpURLConnection.HTTP_OK;
+            }
+
+            @Override
+            public String getResponseMessage() {
+                return "OK";
+            }
+
+            @Override
+            public MASResponseBody<Object> getBody() {
+                return body;
+            }
+        };
+    }
+
+    /**
+     * Builds the result of a gateway invocation: the response content and the first value of every header.
+     */
+    private JSONObject getInvokeResponse(MASResponse<Object> masResponse) {
+        return getInvokeResponse(masResponse, null);
+    }
+
+    /**
+     * @param projection The parts of the response to keep, may be null to keep all of it.
+     */
+    private JSONObject getInvokeResponse(MASResponse<Object> masResponse, MASResponseProjection projection) {
+        JSONObject response = new JSONObject();
+        Object content = masResponse.getBody().getContent();
+        if (projection != null) {
+            content = projection.projectBody(content);
+        }
+        if (content instanceof byte[]) {
+            // Binary content can only travel as an ArrayBuffer on its own, inside a JSON result it is Base64 encoded
+            content = Base64.encodeToString((byte[]) content, Base64.NO_WRAP);
+        }
+        if (content != null) {
+            try {
+                response.put("MASResponseInfoBodyInfoKey", content);
+            } catch (JSONException ignore) {
+            }
+        }
+        JSONObject headerJson = getInvokeResponseHeaders(masResponse, projection);
+        if (headerJson != null) {
+            try {
+                response.put("MASResponseInfoHeaderInfoKey", headerJson);
+            } catch (JSONException ignore) {
+            }
+        }
+        return response;
+    }
+
+    /**
+     * @return The first value of every response header, or null if the response has no headers.
+     */
+    private JSONObject getInvokeResponseHeaders(MASResponse<Object> masResponse) {
+        return getInvokeResponseHeaders(masResponse, null);
+    }
+
+    /**
+     * @param projection The headers to keep, may be null to keep all of them.
+     * @return The first value of the selected response headers, or null if none is kept.
+     */
+    private JSONObject getInvokeResponseHeaders(MASResponse<Object> masResponse, MASResponseProjection projection) {
+        Map<String, List<String>> responseHeaders = masResponse.getHeaders();
+        if (responseHeaders == null || (projection != null && !projection.keepsHeaders())) {
+            return null;
+        }
+        JSONObject headerJson = new JSONObject();
+        for (String h : responseHeaders.keySet()) {
+            if (h == null || (projection != null && !projection.keepsHeader(h))) {
+                continue;
+            }
+            List<String> hv = responseHeaders.get(h);
+            if (hv != null && !hv.isEmpty()) {
+                try {
+                    headerJson.put(h, hv.get(0));
+                } catch (JSONException ignore) {
+                }
+            }
+        }
+        return headerJson;
     }
 
     private abstract class InvokeCommand {
@@ -637,6 +1688,8 @@ public class MASPluginMAS extends MASCordovaPlugin {
         protected static final int MAS_REQUEST_RESPONSE_TYPE_TEXT_PLAIN = 2;
         protected static final int MAS_REQUEST_RESPONSE_TYPE_WWW_FORM_URL_ENCODED = 3;
         protected static final int MAS_REQUEST_RESPONSE_TYPE_XML = 4;
+        protected static final int MAS_REQUEST_RESPONSE_TYPE_BINARY = 5;
+        protected static final int MAS_REQUEST_RESPONSE_TYPE_FILE = 6;
 
         private static final int PATH = 0;
         private static final int PARAMETERS = 1;
@@ -644,99 +1697,621 @@ public class MASPluginMAS extends MASCordovaPlugin {
         private static final int REQUEST_TYPE = 3;
         private static final int RESPONSE_TYPE = 4;
         private static final int IS_PUBLIC = 5;
+        private static final int OPTIONS = 6;
+        private static final String OPTION_CACHE = "cache";
+        private static final String OPTION_PRIORITY = "priority";
+        private static final String OPTION_RETRY = "retry";
+        private static final String OPTION_DEFERRABLE = "deferrable";
+        private static final String OPTION_HANDLE = "handle";
+        private static final String OPTION_TAG = "tag";
+        private static final String OPTION_TIMEOUT = "timeoutMillis";
+        private static final String OPTION_FIELDS = "fields";
+        private static final String OPTION_RESPONSE_HEADERS = "responseHeaders";
+        private static final String OPTION_STREAM = "stream";
+        private static final String OPTION_STREAM_PATH = "streamPath";
+        private static final String OPTION_STREAM_BATCH_SIZE = "streamBatchSize";
+        private static final int DEFAULT_STREAM_BATCH_SIZE = 100;
+        private static final String OPTION_CONTENT_TYPE = "contentType";
+        private static final String OPTION_BODY_ENCODING = "bodyEncoding";
+        private static final String BODY_ENCODING_BASE64 = "base64";
+        private static final String OPTION_ENCODING = "encoding";
+
+        protected int responseType = MAS_REQUEST_RESPONSE_TYPE_JSON;
+        protected CallbackContext callbackContext;
+        protected int priority = MASRequestScheduler.PRIORITY_NORMAL;
+        protected boolean retry;
+        protected String host;
+        private String cacheUser;
+        private String cacheKey;
+        private MASResponseCache.Entry cachedEntry;
+        private String coalesceKey;
+        private String coalesceStatsKey;
+        private String requestKey;
+        private boolean coalescible;
+        private boolean deferrable;
+        private String handle;
+        private String tag;
+        private long timeoutMillis;
+        private MASRequestRegistry.Entry registration;
+        private MASResponseProjection projection;
+        private MASJsonStreamResponseBody streamBody;
+        private String pathTemplate;
+        private MASRequestBody rawBody;
+        private boolean cbor;
+        private boolean cache;
+        private JSONArray args;
+        private MASEndpoint endpoint;
+        private String endpointPath;
+        private Object endpointBody;
+        private JSONObject endpointOptions;
+        private MASCallback<MASResponse<Object>> responseCallback;
+        private boolean cancelled;
+
+        protected void execute(Context context, JSONArray args, CallbackContext callbackContext) {
+            this.callbackContext = callbackContext;
+            this.args = args;
+            try {
+                lookUpAndSend(prepareRequest(args));
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
 
+        /**
+         * Invokes a registered endpoint from its parsed registration, only the invocation is read.
+         */
+        protected void execute(MASEndpoint endpoint, JSONObject values, Object body, JSONObject options, CallbackContext callbackContext) {
+            this.callbackContext = callbackContext;
+            try {
+                lookUpAndSend(prepareRequest(endpoint, values, body, options));
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
 
-        protected void execute(Context context, JSONArray args, final CallbackContext callbackContext) {
+        /**
+         * Sends the request on behalf of another action. It is registered, timed and traced like the others, but its
+         * response or error is handed to the callback instead of a JavaScript callback.
+         *
+         * @return Cancels the request, whether it is already sent or still looked up in the response cache.
+         */
+        protected MASRequestRegistry.Canceller execute(JSONArray args, MASCallback<MASResponse<Object>> responseCallback) {
+            this.responseCallback = responseCallback;
+            this.args = args;
             try {
-                JSONObject parameters = args.optJSONObject(PARAMETERS);
-                JSONObject headers = args.optJSONObject(HEADERS);
-                String path = args.getString(PATH);
-                final int requestType = args.getInt(REQUEST_TYPE);
-                final int responseType = args.getInt(RESPONSE_TYPE);
-                boolean isPublic = Boolean.parseBoolean(args.optString(IS_PUBLIC, "false"));
-                MASRequest.MASRequestBuilder builder = getRequestBuilder(path, parameters, requestType, responseType);
-                if (headers != null && headers.names() != null) {
-                    for (int i = 0; i < headers.names().length(); i++) {
-                        String name = headers.names().getString(i);
-                        String value = headers.getString(name);
-                        builder.header(name, value);
+                MASRequest.MASRequestBuilder builder = prepareRequest(args);
+                // The caller handles the failure itself, the request is not queued offline
+                deferrable = false;
+                lookUpAndSend(builder);
+            } catch (Exception e) {
+                fail(e);
+            }
+            return new MASRequestRegistry.Canceller() {
+                @Override
+                public void cancel() {
+                    MASRequestRegistry.Entry entry;
+                    synchronized (InvokeCommand.this) {
+                        cancelled = true;
+                        entry = registration;
+                    }
+                    if (entry != null) {
+                        entry.cancel();
                     }
                 }
-                builder.notifyOnCancel();
-                if (isPublic) {
-                    builder.setPublic();
+            };
+        }
+
+        private void fail(Exception e) {
+            Log.e(TAG, e.getMessage(), e);
+            if (registration == null || registration.complete()) {
+                onFailed();
+                sendError(e, getError(e));
+            }
+        }
+
+        /**
+         * Looks the request up in the response cache if it asked for it, then builds and sends it. A response which
+         * is not in memory is read on the disk executor of the cache, not on the calling thread.
+         */
+        private void lookUpAndSend(final MASRequest.MASRequestBuilder builder) throws MASCordovaException {
+            if (!usesCache()) {
+                send(buildRequest(builder, null));
+                return;
+            }
+            responseCache.get(cacheUser, requestKey, new MASResponseCache.Callback() {
+                @Override
+                public void onEntry(MASResponseCache.Entry entry) {
+                    try {
+                        send(buildRequest(builder, entry));
+                    } catch (Exception e) {
+                        fail(e);
+                    }
                 }
-                MAS.invoke(builder.build(), new MASCallback<MASResponse<Object>>() {
+            });
+        }
 
+        private void send(MASRequest request) throws MASCordovaException {
+            if (cachedEntry != null && cachedEntry.isFresh()) {
+                sendCached();
+                return;
+            }
+            final MASRequestRegistry.Entry entry;
+            synchronized (this) {
+                if (cancelled) {
+                    // Cancelled while it was looked up in the response cache
+                    return;
+                }
+                entry = requestRegistry.register(handle, tag, timeoutMillis, new MASRequestRegistry.Listener() {
                     @Override
-                    public void onSuccess(MASResponse masResponse) {
-                        JSONObject response = new JSONObject();
-                        Object content = masResponse.getBody().getContent();
-                        if (content != null) {
-                            try {
-                                response.put("MASResponseInfoBodyInfoKey", content);
-                            } catch (JSONException ignore) {
-                            }
+                    public void onCancelled(Throwable reason) {
+                        onFailed();
+                        sendError(reason, getError(reason));
+                    }
+                });
+                registration = entry;
+            }
+            final long startedAt = System.nanoTime();
+            final long traceId = MASTracer.isEnabled() ? MASTracer.nextId() : 0;
+            if (traceId != 0) {
+                MASTracer.begin("request", pathTemplate, traceId);
+            }
+            final MASCallback<MASResponse<Object>> callback = new MASCallback<MASResponse<Object>>() {
+
+                @Override
+                public void onSuccess(MASResponse<Object> masResponse) {
+                    // The gateway is reachable, send the requests deferred while it was not
+                    offlineQueue.replay(getCurrentUserName());
+                    if (!entry.complete()) {
+                        return;
+                    }
+                    recordPathLatency(pathTemplate, System.nanoTime() - startedAt);
+                    if (traceId != 0) {
+                        MASTracer.end("request", pathTemplate, traceId);
+                    }
+                    if (cachedEntry != null && masResponse.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        responseCache.notModified(cacheUser, cacheKey, cachedEntry, masResponse.getHeaders());
+                        sendCached();
+                        return;
+                    }
+                    if (sendResponse(masResponse)) {
+                        return;
+                    }
+                    if (responseCallback != null) {
+                        if (cacheKey != null) {
+                            responseCache.put(cacheUser, cacheKey, getInvokeResponse(masResponse), masResponse.getHeaders());
                         }
-                        Map<String, List<String>> responseHeaders = masResponse.getHeaders();
-                        if (responseHeaders != null) {
-                            JSONObject headerJson = new JSONObject();
-                            for (String h : responseHeaders.keySet()) {
-                                List<String> hv = responseHeaders.get(h);
-                                if (hv != null && !hv.isEmpty()) {
-                                    try {
-                                        headerJson.put(h, hv.get(0));
-                                    } catch (JSONException ignore) {
-                                    }
-                                }
-                            }
-                            try {
+                        responseCallback.onSuccess(masResponse);
+                        return;
+                    }
+                    if (streamBody != null) {
+                        JSONObject response = new JSONObject();
+                        try {
+                            response.put("MASResponseInfoBodyInfoKey", streamBody.getContent());
+                            JSONObject headerJson = getInvokeResponseHeaders(masResponse, projection);
+                            if (headerJson != null) {
                                 response.put("MASResponseInfoHeaderInfoKey", headerJson);
-                            } catch (JSONException ignore) {
                             }
+                            response.put("streamedCount", streamBody.getStreamedCount());
+                        } catch (JSONException ignore) {
                         }
-                        success(callbackContext, response, false);
+                        sendResult(response);
+                        return;
+                    }
+                    if (responseType == MAS_REQUEST_RESPONSE_TYPE_BINARY) {
+                        Object content = masResponse.getBody().getContent();
+                        JSONObject headerJson = getInvokeResponseHeaders(masResponse, projection);
+                        success(callbackContext, content instanceof byte[] ? (byte[]) content : new byte[0],
+                                headerJson != null ? headerJson : new JSONObject(), false);
+                        return;
                     }
+                    if (cacheKey == null) {
+                        // A JSON result is written as text straight from the response, a CBOR one is encoded from the response tree
+                        String envelope = cbor ? null : MASResponseEnvelope.write(masResponse.getBody().getContent(), masResponse.getHeaders(), projection);
+                        if (envelope != null) {
+                            successJson(callbackContext, envelope, false);
+                        } else {
+                            sendResult(getInvokeResponse(masResponse, projection));
+                        }
+                        return;
+                    }
+                    // The cache keeps the whole response, every caller projects it its own way
+                    JSONObject response = getInvokeResponse(masResponse);
+                    responseCache.put(cacheUser, cacheKey, response, masResponse.getHeaders());
+                    sendResult(project(response));
+                }
 
-                    @Override
-                    public void onError(Throwable throwable) {
-                        if (throwable instanceof MAS.RequestCancelledException) {
-                            JSONObject error = new JSONObject();
-                            String errorMessage = "Request Cancelled";
-                            try {
-                                if ((((MAS.RequestCancelledException) throwable).getData() != null &&
-                                        ((MAS.RequestCancelledException) throwable).getData().get(REQUEST_CANCELLATION_MSG_KEY) != null)) {
-                                    errorMessage = (String) ((MAS.RequestCancelledException) throwable).getData().get(REQUEST_CANCELLATION_MSG_KEY);
-                                }
-                                error.put("errorMessage", errorMessage);
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                            }
-                            callbackContext.error(error);
-                        } else
-                            callbackContext.error(getError(throwable));
+                @Override
+                public void onError(Throwable throwable) {
+                    if (!entry.complete()) {
+                        return;
                     }
-                });
-            } catch (Exception e) {
+                    recordPathLatency(pathTemplate, System.nanoTime() - startedAt);
+                    if (traceId != 0) {
+                        MASTracer.end("request", pathTemplate, traceId);
+                    }
+                    MASResponse notModified = getNotModifiedResponse(throwable);
+                    if (cachedEntry != null && notModified != null) {
+                        responseCache.notModified(cacheUser, cacheKey, cachedEntry, notModified.getHeaders());
+                        sendCached();
+                        return;
+                    }
+                    if (deferrable && MASRetryPolicy.isTransient(throwable)) {
+                        defer();
+                        return;
+                    }
+                    onFailed();
+                    sendError(throwable, getInvokeError(throwable));
+                }
+            };
+            if (coalesceKey == null) {
+                entry.setCanceller(scheduler.invoke(priority, host, retry, request, callback));
+                return;
+            }
+            final MASRequest sharedRequest = request;
+            coalescer.join(coalesceKey, coalesceStatsKey, callback, new MASRequestCoalescer.Transport() {
+                @Override
+                public MASRequestRegistry.Canceller start(MASCallback<MASResponse<Object>> invocation) {
+                    return scheduler.invoke(priority, host, retry, sharedRequest, invocation);
+                }
+            });
+            entry.setCanceller(new MASRequestRegistry.Canceller() {
+                @Override
+                public void cancel() {
+                    // The shared invocation is only cancelled once none of its requests is left
+                    coalescer.leave(coalesceKey, callback);
+                }
+            });
+        }
+
+        private MASRequest.MASRequestBuilder prepareRequest(JSONArray args) throws Exception {
+            JSONObject parameters = args.optJSONObject(PARAMETERS);
+            JSONObject headers = args.optJSONObject(HEADERS);
+            String path = args.getString(PATH);
+            responseType = args.getInt(RESPONSE_TYPE);
+            boolean isPublic = Boolean.parseBoolean(args.optString(IS_PUBLIC, "false"));
+            JSONObject options = args.optJSONObject(OPTIONS);
+            retry = isIdempotent();
+            if (options != null) {
+                applyOptions(options);
+                projection = MASResponseProjection.parse(options.optJSONArray(OPTION_FIELDS), options.optJSONArray(OPTION_RESPONSE_HEADERS));
+                if (options.has(OPTION_CONTENT_TYPE)) {
+                    rawBody = newRawBody(args.opt(PARAMETERS), options.optString(OPTION_CONTENT_TYPE), options.optString(OPTION_BODY_ENCODING));
+                }
+            }
+            MASRequest.MASRequestBuilder builder = newRequestBuilder(path, parameters, args.getInt(REQUEST_TYPE), getMethod() + " " + MASMetrics.toTemplate(path));
+            if (headers != null) {
+                Iterator<String> names = headers.keys();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    builder.header(name, headers.getString(name));
+                }
+            }
+            return prepareRequest(builder, path, parameters, headers, String.valueOf(headers), isPublic);
+        }
+
+        /**
+         * Builds the request of a registered endpoint. The registered headers, options and projection are used as
+         * parsed at registration, the invocation options override them.
+         */
+        private MASRequest.MASRequestBuilder prepareRequest(MASEndpoint endpoint, JSONObject values, Object body, JSONObject options) throws Exception {
+            String path = endpoint.expand(values);
+            this.endpoint = endpoint;
+            endpointPath = path;
+            endpointBody = body;
+            endpointOptions = options;
+            responseType = endpoint.getResponseType();
+            retry = isIdempotent();
+            projection = endpoint.getProjection();
+            String contentType = null;
+            String bodyEncoding = null;
+            JSONObject registered = endpoint.getOptions();
+            if (registered != null) {
+                applyOptions(registered);
+                contentType = registered.optString(OPTION_CONTENT_TYPE, null);
+                bodyEncoding = registered.optString(OPTION_BODY_ENCODING, null);
+            }
+            if (options != null) {
+                applyOptions(options);
+                if (options.has(OPTION_FIELDS) || options.has(OPTION_RESPONSE_HEADERS)) {
+                    projection = MASResponseProjection.parse(options.optJSONArray(OPTION_FIELDS), options.optJSONArray(OPTION_RESPONSE_HEADERS));
+                }
+                contentType = options.optString(OPTION_CONTENT_TYPE, contentType);
+                bodyEncoding = options.optString(OPTION_BODY_ENCODING, bodyEncoding);
+            }
+            if (contentType != null) {
+                rawBody = newRawBody(body, contentType, bodyEncoding);
+            }
+            JSONObject parameters = body instanceof JSONObject ? (JSONObject) body : null;
+            MASRequest.MASRequestBuilder builder = newRequestBuilder(path, parameters, endpoint.getRequestType(), endpoint.getPathTemplate());
+            String[] headerNames = endpoint.getHeaderNames();
+            String[] headerValues = endpoint.getHeaderValues();
+            for (int i = 0; i < headerNames.length; i++) {
+                builder.header(headerNames[i], headerValues[i]);
+            }
+            return prepareRequest(builder, path, parameters, endpoint.getHeaders(), endpoint.getHeadersKey(), endpoint.isPublic());
+        }
+
+        /**
+         * Applies request options, the options an object leaves out keep their current value.
+         */
+        private void applyOptions(JSONObject options) throws MASCordovaException {
+            handle = options.optString(OPTION_HANDLE, handle);
+            tag = options.optString(OPTION_TAG, tag);
+            timeoutMillis = options.optLong(OPTION_TIMEOUT, timeoutMillis);
+            if (options.has(OPTION_PRIORITY)) {
+                priority = MASRequestScheduler.toPriority(options.optInt(OPTION_PRIORITY, MASRequestScheduler.PRIORITY_NORMAL));
+            }
+            retry = options.optBoolean(OPTION_RETRY, retry);
+            deferrable = !isSafe() && options.optBoolean(OPTION_DEFERRABLE, deferrable);
+            cache = options.optBoolean(OPTION_CACHE, cache);
+            if (options.has(OPTION_ENCODING)) {
+                // A binary response is already sent as bytes
+                cbor = MASCborEncoder.ENCODING.equals(options.optString(OPTION_ENCODING)) && responseType != MAS_REQUEST_RESPONSE_TYPE_BINARY;
+            }
+            if (options.optBoolean(OPTION_STREAM, false)) {
+                streamBody = newStreamBody(options);
+            }
+        }
+
+        private MASRequest.MASRequestBuilder newRequestBuilder(String path, JSONObject parameters, int requestType, String pathTemplate) throws Exception {
+            if (streamBody != null) {
+                // Batches already delivered cannot be taken back, a streamed request is neither retried nor deferred
+                retry = false;
+                deferrable = false;
+            }
+            host = getRequestHost(path);
+            this.pathTemplate = pathTemplate;
+            MASRequest.MASRequestBuilder builder = getRequestBuilder(path, parameters, requestType, responseType);
+            if (streamBody != null) {
+                builder.responseBody(streamBody);
+            } else if (responseType == MAS_REQUEST_RESPONSE_TYPE_BINARY) {
+                builder.responseBody(getResponseBody(responseType));
+            }
+            return builder;
+        }
+
+        /**
+         * Keys the request for the response cache and for sharing an identical request in flight.
+         *
+         * @param headersKey The headers as they take part in the cache key.
+         */
+        private MASRequest.MASRequestBuilder prepareRequest(MASRequest.MASRequestBuilder builder, String path, JSONObject parameters,
+                                                            JSONObject headers, String headersKey, boolean isPublic) {
+            if (isSafe() && streamBody == null) {
+                cacheUser = getCurrentUserName();
+                requestKey = responseType + "|" + isPublic + "|" + path + "|" + parameters + "|" + headersKey;
+                coalescible = coalescer.canCoalesce(headers);
+                // Counted per path template, the raw path may carry user identifiers
+                coalesceStatsKey = pathTemplate;
+            }
+            builder.notifyOnCancel();
+            if (isPublic) {
+                builder.setPublic();
+            }
+            return builder;
+        }
+
+        private boolean usesCache() {
+            return cache && requestKey != null && responseCache != null && responseType != MAS_REQUEST_RESPONSE_TYPE_BINARY;
+        }
+
+        /**
+         * Serves the request from the cached entry if it is fresh, turns it into a conditional request if the entry
+         * is stale, or joins an identical request in flight, then builds it.
+         *
+         * @param entry The cached entry of the request, may be null.
+         */
+        private MASRequest buildRequest(MASRequest.MASRequestBuilder builder, MASResponseCache.Entry entry) {
+            if (usesCache()) {
+                cacheKey = requestKey;
+                useCachedEntry(entry, builder);
+            }
+            if (requestKey != null && cachedEntry == null && coalescible) {
+                coalesceKey = MASResponseCache.partition(cacheUser) + "\n" + requestKey;
+            }
+            return builder.build();
+        }
+
+        /**
+         * Safe requests may be served from the response cache and share an identical request in flight.
+         */
+        protected boolean isSafe() {
+            return false;
+        }
+
+        /**
+         * Transient failures of idempotent requests are retried unless the request opts out.
+         */
+        protected boolean isIdempotent() {
+            return false;
+        }
+
+        protected String getMethod() {
+            return null;
+        }
+
+        /**
+         * Sends the result of a successful response in place of the response envelope.
+         *
+         * @return false to send the response envelope.
+         */
+        protected boolean sendResponse(MASResponse<Object> masResponse) {
+            return false;
+        }
+
+        /**
+         * Invoked once the request has failed, been cancelled or timed out.
+         */
+        protected void onFailed() {
+        }
+
+        /**
+         * Sends a body serialized by the JavaScript layer as is, as text or as the bytes of an ArrayBuffer.
+         */
+        private MASRequestBody newRawBody(Object body, String contentType, String bodyEncoding) throws MASCordovaException {
+            if (!METHOD_PUT.equals(getMethod()) && !METHOD_POST.equals(getMethod())) {
+                throw new MASCordovaException("Raw request bodies are only supported by PUT and POST requests");
+            }
+            if (!(body instanceof String)) {
+                throw new MASCordovaException("A raw request body must be a string or an ArrayBuffer");
+            }
+            if (contentType == null || contentType.isEmpty()) {
+                throw new MASCordovaException("Invalid content type for the raw request body");
+            }
+            if (BODY_ENCODING_BASE64.equals(bodyEncoding)) {
+                return MASRawRequestBody.binary((String) body, contentType);
+            }
+            return MASRawRequestBody.text((String) body, contentType);
+        }
+
+        /**
+         * Streams the elements of a JSON array of the response to the caller in batches over its kept callback.
+         */
+        private MASJsonStreamResponseBody newStreamBody(JSONObject options) throws MASCordovaException {
+            if (callbackContext == null) {
+                throw new MASCordovaException("Streamed responses are not supported in batches");
+            }
+            if (responseType != MAS_REQUEST_RESPONSE_TYPE_JSON && responseType != MAS_REQUEST_RESPONSE_TYPE_SCIM_JSON) {
+                throw new MASCordovaException("Streamed responses require a JSON response type");
+            }
+            String[] path = MASResponseProjection.toPath(options.optString(OPTION_STREAM_PATH, ""));
+            int batchSize = options.optInt(OPTION_STREAM_BATCH_SIZE, DEFAULT_STREAM_BATCH_SIZE);
+            return new MASJsonStreamResponseBody(path, batchSize, new MASJsonStreamResponseBody.Listener() {
+                @Override
+                public boolean onBatch(JSONArray items, int sequence) {
+                    if (registration != null && registration.isDone()) {
+                        // Cancelled or timed out, stop reading
+                        return false;
+                    }
+                    JSONObject batch = new JSONObject();
+                    try {
+                        batch.put("type", "batch");
+                        batch.put("sequence", sequence);
+                        batch.put("items", items);
+                    } catch (JSONException ignore) {
+                    }
+                    success(callbackContext, batch, true);
+                    return true;
+                }
+            });
+        }
+
+        /**
+         * Sends the result as JSON, or encoded as CBOR if the request asked for it.
+         */
+        private void sendResult(JSONObject result) {
+            if (!cbor) {
+                success(callbackContext, result, false);
+                return;
+            }
+            try {
+                success(callbackContext, MASCborEncoder.encode(result), false);
+            } catch (MASCordovaException e) {
                 Log.e(TAG, e.getMessage(), e);
                 callbackContext.error(getError(e));
             }
         }
 
+        /**
+         * Sends the cached response, to the callback of the action the request was sent for if any.
+         */
+        private void sendCached() {
+            if (responseCallback != null) {
+                responseCallback.onSuccess(toResponse(cachedEntry.getResponse()));
+            } else {
+                sendResult(project(cachedEntry.getResponse()));
+            }
+        }
+
+        /**
+         * @param error The error as sent to JavaScript.
+         */
+        private void sendError(Throwable throwable, JSONObject error) {
+            if (responseCallback != null) {
+                responseCallback.onError(throwable);
+            } else {
+                callbackContext.error(error);
+            }
+        }
+
+        private JSONObject project(JSONObject response) {
+            return projection != null ? projection.projectResponse(response, "MASResponseInfoBodyInfoKey", "MASResponseInfoHeaderInfoKey") : response;
+        }
+
+        /**
+         * Stores the request in the offline queue, the request succeeds with its queue id once it is on disk and fails
+         * if it could not be written.
+         */
+        private void defer() {
+            // An endpoint invocation is queued as the positional arguments it stands for
+            JSONArray queuedArgs = args != null ? args : endpoint.toInvokeArgs(endpointPath, endpointBody, endpointOptions);
+            offlineQueue.add(getCurrentUserName(), getMethod(), queuedArgs, new MASOfflineQueue.Callback() {
+                @Override
+                public void onDurable(long id) {
+                    JSONObject result = new JSONObject();
+                    try {
+                        result.put(NODE_QUEUED, true);
+                        result.put(NODE_QUEUE_ID, id);
+                    } catch (JSONException ignore) {
+                    }
+                    success(callbackContext, result, false);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    callbackContext.error(getError(new MASCordovaException("Unable to queue the request", error)));
+                }
+            });
+        }
+
+        /**
+         * A stale entry turns the request into a conditional one.
+         */
+        private void useCachedEntry(MASResponseCache.Entry entry, MASRequest.MASRequestBuilder builder) {
+            cachedEntry = entry;
+            if (cachedEntry == null || cachedEntry.isFresh()) {
+                return;
+            }
+            if (!cachedEntry.canRevalidate()) {
+                cachedEntry = null;
+                return;
+            }
+            if (cachedEntry.getEtag() != null) {
+                builder.header("If-None-Match", cachedEntry.getEtag());
+            }
+            if (cachedEntry.getLastModified() != null) {
+                builder.header("If-Modified-Since", cachedEntry.getLastModified());
+            }
+        }
+
         protected Uri getUri(String path, JSONObject parameters) throws Exception {
             Uri.Builder uriBuilder = new Uri.Builder();
-            uriBuilder.encodedPath(path);
-            if (parameters != null && parameters.names() != null) {
-                for (int i = 0; i < parameters.names().length(); i++) {
-                    String name = parameters.names().getString(i);
-                    String value = parameters.getString(name);
-                    uriBuilder.appendQueryParameter(name, value);
+            // A path may carry an encoded query already, e.g. the next link of a page, the parameters are added to it
+            int queryStart = path.indexOf('?');
+            uriBuilder.encodedPath(queryStart >= 0 ? path.substring(0, queryStart) : path);
+            String pathQuery = queryStart >= 0 ? path.substring(queryStart + 1) : "";
+            if (parameters != null && parameters.length() > 0) {
+                // Encoded the same way as appendQueryParameter, which copies the whole query on every call
+                StringBuilder query = new StringBuilder(pathQuery.length() + parameters.length() * 32).append(pathQuery);
+                Iterator<String> names = parameters.keys();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    if (query.length() > 0) {
+                        query.append('&');
+                    }
+                    query.append(Uri.encode(name)).append('=').append(Uri.encode(parameters.getString(name)));
                 }
+                uriBuilder.encodedQuery(query.toString());
+            } else if (!pathQuery.isEmpty()) {
+                uriBuilder.encodedQuery(pathQuery);
             }
             return uriBuilder.build();
         }
 
-        protected MASRequestBody getRequestBody(int requestType, JSONObject parameters) throws JSONException {
+        protected MASRequestBody getRequestBody(int requestType, JSONObject parameters) throws JSONException, IOException {
+            if (rawBody != null) {
+                return rawBody;
+            }
             if (parameters == null) {
                 return null;
             }
@@ -746,19 +2321,22 @@ public class MASPluginMAS extends MASCordovaPlugin {
                     return MASRequestBody.jsonBody(parameters);
                 case MAS_REQUEST_RESPONSE_TYPE_TEXT_PLAIN:
                 case MAS_REQUEST_RESPONSE_TYPE_XML:
-                    if (parameters.names().length() > 0) {
-                        return MASRequestBody.stringBody(parameters.getString(parameters.names().getString(0)));
+                    Iterator<String> first = parameters.keys();
+                    if (first.hasNext()) {
+                        return MASRequestBody.stringBody(parameters.getString(first.next()));
                     } else {
                         return null;
                     }
                 case MAS_REQUEST_RESPONSE_TYPE_WWW_FORM_URL_ENCODED:
-                    List<Pair<String, String>> list = new ArrayList<>();
-                    for (int i = 0; i < parameters.names().length(); i++) {
-                        String name = parameters.names().getString(i);
-                        String value = parameters.getString(name);
-                        list.add(new Pair<>(name, value));
+                    List<Pair<String, String>> list = new ArrayList<>(parameters.length());
+                    Iterator<String> names = parameters.keys();
+                    while (names.hasNext()) {
+                        String name = names.next();
+                        list.add(new Pair<>(name, parameters.getString(name)));
                     }
                     return MASRequestBody.urlEncodedFormBody(list);
+                case MAS_REQUEST_RESPONSE_TYPE_FILE:
+                    return new MASFileRequestBody(mContext, parameters, callbackContext != null ? newProgressListener(callbackContext) : null);
                 default:
                     return null;
             }
@@ -773,6 +2351,8 @@ public class MASPluginMAS extends MASCordovaPlugin {
                 case MAS_REQUEST_RESPONSE_TYPE_XML:
                 case MAS_REQUEST_RESPONSE_TYPE_WWW_FORM_URL_ENCODED:
                     return MASResponseBody.stringBody();
+                case MAS_REQUEST_RESPONSE_TYPE_BINARY:
+                    return MASResponseBody.byteArrayBody();
                 default:
                     return null;
             }
@@ -838,6 +2418,10 @@ public class MASPluginMAS extends MASCordovaPlugin {
             MAS.setAuthenticationListener(new MASAuthenticationListener() {
                 @Override
                 public void onAuthenticateRequest(Context context, long requestId, MASAuthenticationProviders masAuthenticationProviders) {
+                    if (MASTracer.isEnabled()) {
+                        loginPromptTraceId = MASTracer.nextId();
+                        MASTracer.begin(TRACE_AUTH, SPAN_LOGIN_PROMPT, loginPromptTraceId);
+                    }
                     JSONObject jsonObject = new JSONObject();
                     JSONObject result = new JSONObject();
                     try {
@@ -845,6 +2429,7 @@ public class MASPluginMAS extends MASCordovaPlugin {
                             @Override
                             protected void onAuthCodeReceived(String code, String state) {
                                 super.onAuthCodeReceived(code, state);
+                                endLoginPrompt();
                                 MASUser.login(new MASAuthCredentialsAuthorizationCode(code, state), new MASCallback<MASUser>() {
                                     @Override
                                     public void onSuccess(MASUser result) {
@@ -940,6 +2525,10 @@ public class MASPluginMAS extends MASCordovaPlugin {
                 @Override
                 public void onOtpAuthenticateRequest(Context context, MASOtpAuthenticationHandler masOtpAuthenticationHandler) {
                     masOtpAuthenticationHandlerStatic = masOtpAuthenticationHandler;
+                    if (MASTracer.isEnabled()) {
+                        otpPromptTraceId = MASTracer.nextId();
+                        MASTracer.begin(TRACE_AUTH, SPAN_OTP_PROMPT, otpPromptTraceId);
+                    }
                     JSONObject jsonObject = new JSONObject();
                     JSONObject result = new JSONObject();
                     try {
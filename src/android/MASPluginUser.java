@@ -44,57 +44,120 @@ public class MASPluginUser extends MASCordovaPlugin {
     @Override
     protected void pluginInitialize() {
         super.pluginInitialize();
-    }
-
-    @Override
-    public boolean execute(String action, final JSONArray args, final CallbackContext callbackContext) throws JSONException {
-        try {
-            if (action.equalsIgnoreCase("isAuthenticated")) {
+        registerAction("isAuthenticated", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 isAuthenticated(callbackContext);
-            } else if (action.equalsIgnoreCase("initializeBrowserBasedAuthentication")) {
+            }
+        });
+        registerAction("initializeBrowserBasedAuthentication", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 initializeBrowserBasedAuthentication(callbackContext);
-            } else if (action.equalsIgnoreCase("isCurrentUser")) {
+            }
+        });
+        registerAction("isCurrentUser", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 isCurrentUser(callbackContext);
-            } else if (action.equalsIgnoreCase("getAccessToken")) {
+            }
+        });
+        registerAction("getAccessToken", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 getAccessToken(callbackContext);
-            } else if (action.equalsIgnoreCase("currentUser")) {
-                getCurrentUser(callbackContext);
-            } else if (action.equalsIgnoreCase("isSessionLocked")) {
+            }
+        });
+        registerAction("currentUser", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
+                getCurrentUser(args, callbackContext);
+            }
+        });
+        registerAction("isSessionLocked", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 isSessionLocked(callbackContext);
-            } else if (action.equalsIgnoreCase("lockSession")) {
+            }
+        });
+        registerAction("lockSession", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 lockSession(callbackContext);
-            } else if (action.equalsIgnoreCase("unlockSession")) {
+            }
+        });
+        registerAction("unlockSession", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 unlockSession(callbackContext);
-            } else if (action.equalsIgnoreCase("unlockSessionWithMessage")) {
+            }
+        });
+        registerAction("unlockSessionWithMessage", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 unlockSessionWithMessage(callbackContext, args);
-            } else if (action.equalsIgnoreCase("removeSessionLock")) {
+            }
+        });
+        registerAction("removeSessionLock", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 removeSessionLock(callbackContext);
-            } else if (action.equalsIgnoreCase("loginWithUsernameAndPassword")) {
+            }
+        });
+        registerAction("loginWithUsernameAndPassword", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 loginWithUsernameAndPassword(args, callbackContext);
-            } else if (action.equalsIgnoreCase("loginWithIdTokenAndTokenType")) {
+            }
+        });
+        registerAction("loginWithIdTokenAndTokenType", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 loginWithIdTokenAndTokenType(args, callbackContext);
-            } else if (action.equalsIgnoreCase("loginWithAuthCode")) {
+            }
+        });
+        registerAction("loginWithAuthCode", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 loginWithAuthCode(args, callbackContext);
-            } else if (action.equalsIgnoreCase("loginWithAuthCredentialsUsernamePassword")) {
+            }
+        });
+        registerAction("loginWithAuthCredentialsUsernamePassword", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 loginWithAuthCredentialsUsernamePassword(args, callbackContext);
-            } else if (action.equalsIgnoreCase("loginWithAuthCredentialsJWT")) {
+            }
+        });
+        registerAction("loginWithAuthCredentialsJWT", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 loginWithAuthCredentialsJWT(args, callbackContext);
-            } else if (action.equalsIgnoreCase("loginWithAuthCredentialsAuthCode")) {
+            }
+        });
+        registerAction("loginWithAuthCredentialsAuthCode", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 loginWithAuthCredentialsAuthCode(args, callbackContext);
-            } else if (action.equalsIgnoreCase("logoutUser")) {
+            }
+        });
+        registerAction("logoutUser", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 logoutUser(args,callbackContext);
-            }else if (action.equalsIgnoreCase("requestUserInfo")) {
+            }
+        });
+        registerAction("requestUserInfo", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 requestUserInfo(callbackContext);
-            } else if (action.equalsIgnoreCase("listAttributes")) {
+            }
+        });
+        registerAction("listAttributes", new ActionHandler() {
+            @Override
+            public void handle(JSONArray args, CallbackContext callbackContext) {
                 listAttributes(callbackContext);
-            } else {
-                callbackContext.error("Invalid action");
-                return false;
             }
-        } catch (Throwable th) {
-            callbackContext.error(getError(th));
-        }
-        return true;
+        });
     }
 
     /**
@@ -110,7 +173,6 @@ public class MASPluginUser extends MASCordovaPlugin {
         success(callbackContext, masUser.isAuthenticated(), false);
     }
 
-
     /**
      * Start Browser Based Authentication
      */
@@ -163,9 +225,10 @@ public class MASPluginUser extends MASCordovaPlugin {
     }
 
     /**
-     * Fetches the current logged in MASUser and returns as json object
+     * Fetches the current logged in MASUser and returns as json object, or encoded as CBOR if the first argument is
+     * the cbor encoding.
      */
-    private void getCurrentUser(CallbackContext callbackContext) {
+    private void getCurrentUser(JSONArray args, CallbackContext callbackContext) {
         MASUser masUser = MASUser.getCurrentUser();
         if (masUser == null) {
             MASCordovaException e = new MASCordovaException(MASFoundationStrings.USER_NOT_CURRENTLY_AUTHENTICATED);
@@ -174,9 +237,17 @@ public class MASPluginUser extends MASCordovaPlugin {
         }
 
         try {
-            success(callbackContext, convertUserToJSModel(masUser), false);
+            JSONObject user = convertUserToJSModel(masUser);
+            if (MASCborEncoder.ENCODING.equals(args.optString(0))) {
+                success(callbackContext, MASCborEncoder.encode(user), false);
+            } else {
+                success(callbackContext, user, false);
+            }
         } catch (JSONException jse) {
             callbackContext.error(jse.getLocalizedMessage());
+        } catch (MASCordovaException e) {
+            Log.e(TAG, e.getMessage(), e);
+            callbackContext.error(getError(e));
         }
     }
 
@@ -536,7 +607,6 @@ public class MASPluginUser extends MASCordovaPlugin {
         });
     }
 
-
     private void loginWithAuthCredentialsAuthCode(final JSONArray args, final CallbackContext callbackContext) {
         String authCode = null;
         String state = null;
@@ -576,6 +646,11 @@ public class MASPluginUser extends MASCordovaPlugin {
             return;
         }
         boolean force = args.optBoolean(0, false);
+        // The cached responses of the user are dropped whether or not the logout succeeds
+        MASResponseCache responseCache = MASResponseCache.getInstance();
+        if (responseCache != null) {
+            responseCache.evictUser(masUser.getUserName());
+        }
 
         masUser.logout(force, new MASCallback<Void>() {
             @Override
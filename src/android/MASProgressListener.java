@@ -0,0 +1,19 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+/**
+ * Receives the progress of a streamed upload or download.
+ */
+interface MASProgressListener {
+
+    /**
+     * @param bytesTransferred The number of bytes transferred so far.
+     * @param totalBytes       The total number of bytes, -1 if unknown.
+     */
+    void onProgress(long bytesTransferred, long totalBytes);
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.util.Base64;
+
+import com.ca.mas.core.http.ContentType;
+import com.ca.mas.foundation.MASRequestBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Request body already serialized by the JavaScript layer, sent as is with the content type given by the caller.
+ * The body is never parsed, a JSON document in particular is not turned into a JSONObject and serialized again.
+ */
+class MASRawRequestBody extends MASRequestBody {
+    private static final String CHARSET = "charset=";
+
+    private final byte[] content;
+    private final ContentType contentType;
+
+    private MASRawRequestBody(byte[] content, String contentType) {
+        this.content = content;
+        this.contentType = new ContentType(contentType, null);
+    }
+
+    /**
+     * @param text        The body, encoded with the charset of the content type, UTF-8 if it has none.
+     * @param contentType The content type, for example "application/json" or "text/csv; charset=ISO-8859-1".
+     */
+    static MASRawRequestBody text(String text, String contentType) throws MASCordovaException {
+        Charset charset = Charset.forName("UTF-8");
+        int index = contentType.toLowerCase(Locale.US).indexOf(CHARSET);
+        if (index >= 0) {
+            String name = contentType.substring(index + CHARSET.length()).split(";", 2)[0].trim().replace("\"", "");
+            try {
+                charset = Charset.forName(name);
+            } catch (IllegalArgumentException e) {
+                throw new MASCordovaException("Unsupported charset " + name, e);
+            }
+        }
+        return new MASRawRequestBody(text.getBytes(charset), contentType);
+    }
+
+    /**
+     * @param base64 The body bytes, as the Cordova bridge encodes an ArrayBuffer argument.
+     */
+    static MASRawRequestBody binary(String base64, String contentType) {
+        return new MASRawRequestBody(Base64.decode(base64, Base64.DEFAULT), contentType);
+    }
+
+    @Override
+    public ContentType getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public long getContentLength() {
+        return content.length;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        outputStream.write(content);
+        outputStream.flush();
+    }
+}
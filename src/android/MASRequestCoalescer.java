@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASResponse;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shares a single gateway invocation between identical idempotent requests issued while the first one is in flight.
+ * The response of the shared invocation is fanned out to the callback of every request which joined it.
+ */
+class MASRequestCoalescer {
+    private static final int MAX_STATS_ENTRIES = 128;
+
+    private final Map<String, Invocation> inFlight = new HashMap<>();
+    private final Set<String> optOutHeaders = new HashSet<>();
+    private final LinkedHashMap<String, long[]> stats = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > MAX_STATS_ENTRIES;
+        }
+    };
+
+    MASRequestCoalescer() {
+        optOutHeaders.add("cache-control");
+        optOutHeaders.add("pragma");
+    }
+
+    /**
+     * Replaces the request headers whose presence prevents a request from being coalesced.
+     */
+    synchronized void setOptOutHeaders(List<String> headers) {
+        optOutHeaders.clear();
+        for (String header : headers) {
+            optOutHeaders.add(header.toLowerCase(Locale.US));
+        }
+    }
+
+    /**
+     * @return true if none of the request headers opts the request out of coalescing.
+     */
+    synchronized boolean canCoalesce(JSONObject headers) {
+        if (headers == null) {
+            return true;
+        }
+        Iterator<String> names = headers.keys();
+        while (names.hasNext()) {
+            if (optOutHeaders.contains(names.next().toLowerCase(Locale.US))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends the shared invocation to the gateway.
+     */
+    interface Transport {
+        MASRequestRegistry.Canceller start(MASCallback<MASResponse<Object>> callback);
+    }
+
+    /**
+     * A gateway invocation shared by the requests waiting for it.
+     */
+    private static class Invocation {
+        private final List<MASCallback<MASResponse<Object>>> waiters = new ArrayList<>(2);
+        private MASRequestRegistry.Canceller transport;
+        private boolean abandoned;
+    }
+
+    /**
+     * Joins the in-flight invocation of the request key, or starts a new one with the transport.
+     *
+     * @param key       The identity of the request, including the user it is issued for.
+     * @param statsKey  The entry the request is counted in, it must not contain user data.
+     * @param callback  The callback of the request.
+     * @param transport Sends the invocation if the request is the first one for the key.
+     */
+    void join(final String key, String statsKey, MASCallback<MASResponse<Object>> callback, Transport transport) {
+        final Invocation invocation;
+        synchronized (this) {
+            long[] counters = stats.get(statsKey);
+            if (counters == null) {
+                counters = new long[2];
+                stats.put(statsKey, counters);
+            }
+            Invocation current = inFlight.get(key);
+            if (current != null) {
+                current.waiters.add(callback);
+                counters[1]++;
+                return;
+            }
+            invocation = new Invocation();
+            invocation.waiters.add(callback);
+            inFlight.put(key, invocation);
+            counters[0]++;
+        }
+        MASRequestRegistry.Canceller canceller = transport.start(new MASCallback<MASResponse<Object>>() {
+            @Override
+            public void onSuccess(MASResponse<Object> masResponse) {
+                for (MASCallback<MASResponse<Object>> waiter : complete(key, invocation)) {
+                    waiter.onSuccess(masResponse);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                for (MASCallback<MASResponse<Object>> waiter : complete(key, invocation)) {
+                    waiter.onError(throwable);
+                }
+            }
+        });
+        boolean cancel;
+        synchronized (this) {
+            invocation.transport = canceller;
+            cancel = invocation.abandoned;
+        }
+        if (cancel) {
+            // Every request left while the invocation was being sent
+            canceller.cancel();
+        }
+    }
+
+    /**
+     * Detaches a cancelled request from the invocation it shares, the invocation is cancelled once none of its requests
+     * is left.
+     */
+    void leave(String key, MASCallback<MASResponse<Object>> callback) {
+        MASRequestRegistry.Canceller canceller;
+        synchronized (this) {
+            Invocation invocation = inFlight.get(key);
+            if (invocation == null || !invocation.waiters.remove(callback) || !invocation.waiters.isEmpty()) {
+                return;
+            }
+            // Identical requests issued from now on start a new invocation
+            inFlight.remove(key);
+            invocation.abandoned = true;
+            canceller = invocation.transport;
+        }
+        if (canceller != null) {
+            canceller.cancel();
+        }
+    }
+
+    private synchronized List<MASCallback<MASResponse<Object>>> complete(String key, Invocation invocation) {
+        if (inFlight.get(key) == invocation) {
+            inFlight.remove(key);
+        }
+        return new ArrayList<>(invocation.waiters);
+    }
+
+    /**
+     * @return For every request key, the number of gateway invocations and of requests which joined one in flight.
+     */
+    synchronized JSONObject getStats() throws JSONException {
+        JSONObject requests = new JSONObject();
+        long invocations = 0;
+        long coalesced = 0;
+        for (Map.Entry<String, long[]> entry : stats.entrySet()) {
+            JSONObject counters = new JSONObject();
+            counters.put("invocationCount", entry.getValue()[0]);
+            counters.put("coalescedCount", entry.getValue()[1]);
+            requests.put(entry.getKey(), counters);
+            invocations += entry.getValue()[0];
+            coalesced += entry.getValue()[1];
+        }
+        JSONObject result = new JSONObject();
+        result.put("inFlightCount", inFlight.size());
+        result.put("invocationCount", invocations);
+        result.put("coalescedCount", coalesced);
+        result.put("requests", requests);
+        return result;
+    }
+}
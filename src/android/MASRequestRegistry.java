@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the gateway requests in flight, keyed by the handle the JavaScript layer gave them. A request ends
+ * exactly once: with its response, or earlier when it is cancelled or its deadline passes.
+ */
+class MASRequestRegistry {
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private long anonymous;
+    private long completed;
+    private long cancelled;
+    private long timedOut;
+
+    /**
+     * Cancels the transport of a request.
+     */
+    interface Canceller {
+        void cancel();
+    }
+
+    /**
+     * Delivers the error of a request which is cancelled or times out.
+     */
+    interface Listener {
+        void onCancelled(Throwable reason);
+    }
+
+    /**
+     * A request in flight.
+     */
+    class Entry {
+        private final String key;
+        private final String tag;
+        private final Listener listener;
+        private Canceller canceller;
+        private Runnable deadline;
+        private boolean done;
+
+        private Entry(String key, String tag, Listener listener) {
+            this.key = key;
+            this.tag = tag;
+            this.listener = listener;
+        }
+
+        void setCanceller(Canceller canceller) {
+            boolean cancel;
+            synchronized (MASRequestRegistry.this) {
+                this.canceller = canceller;
+                cancel = done;
+            }
+            if (cancel) {
+                // Cancelled before the transport started
+                canceller.cancel();
+            }
+        }
+
+        boolean isDone() {
+            synchronized (MASRequestRegistry.this) {
+                return done;
+            }
+        }
+
+        /**
+         * Cancels the request, its listener receives the cancellation.
+         *
+         * @return false if the request had already ended.
+         */
+        boolean cancel() {
+            return MASRequestRegistry.this.cancel(this, new MASCordovaException("Request cancelled"));
+        }
+
+        /**
+         * @return true if the request was still in flight, in which case the caller delivers its outcome.
+         */
+        boolean complete() {
+            synchronized (MASRequestRegistry.this) {
+                if (done) {
+                    return false;
+                }
+                done = true;
+                completed++;
+                remove(this);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param handle        The handle of the request, may be null in which case the request cannot be cancelled by handle.
+     * @param tag           The tag of the request, may be null.
+     * @param timeoutMillis The deadline of the request from now, 0 for none.
+     * @throws MASCordovaException If a request in flight already has the handle.
+     */
+    Entry register(String handle, String tag, long timeoutMillis, Listener listener) throws MASCordovaException {
+        final Entry entry;
+        synchronized (this) {
+            if (handle != null && entries.containsKey(handle)) {
+                throw new MASCordovaException("A request with the handle " + handle + " is already in flight");
+            }
+            // Requests without a handle are still counted and may be cancelled by tag or in bulk
+            entry = new Entry(handle != null ? handle : "#" + (++anonymous), tag, listener);
+            entries.put(entry.key, entry);
+        }
+        if (timeoutMillis > 0) {
+            entry.deadline = new Runnable() {
+                @Override
+                public void run() {
+                    // Timed out like a connection, so that a replay of the offline queue is kept for later
+                    if (cancel(entry, new MASCordovaException("Request timed out", new InterruptedIOException("Request timed out")))) {
+                        synchronized (MASRequestRegistry.this) {
+                            timedOut++;
+                        }
+                    }
+                }
+            };
+            handler.postDelayed(entry.deadline, timeoutMillis);
+        }
+        return entry;
+    }
+
+    /**
+     * @return false if no request in flight has the handle.
+     */
+    boolean cancel(String handle) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(handle);
+        }
+        return entry != null && cancel(entry, new MASCordovaException("Request cancelled"));
+    }
+
+    /**
+     * @return The number of cancelled requests.
+     */
+    int cancelByTag(String tag) {
+        List<Entry> tagged = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                if (tag.equals(entry.tag)) {
+                    tagged.add(entry);
+                }
+            }
+        }
+        return cancel(tagged);
+    }
+
+    /**
+     * @return The number of cancelled requests.
+     */
+    int cancelAll() {
+        List<Entry> all;
+        synchronized (this) {
+            all = new ArrayList<>(entries.values());
+        }
+        return cancel(all);
+    }
+
+    private int cancel(List<Entry> toCancel) {
+        int count = 0;
+        for (Entry entry : toCancel) {
+            if (cancel(entry, new MASCordovaException("Request cancelled"))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean cancel(Entry entry, Throwable reason) {
+        Canceller canceller;
+        synchronized (this) {
+            if (entry.done) {
+                return false;
+            }
+            entry.done = true;
+            cancelled++;
+            remove(entry);
+            canceller = entry.canceller;
+        }
+        if (canceller != null) {
+            canceller.cancel();
+        }
+        entry.listener.onCancelled(reason);
+        return true;
+    }
+
+    private void remove(Entry entry) {
+        if (entry.deadline != null) {
+            handler.removeCallbacks(entry.deadline);
+        }
+        // Only the entry itself, never a request registered under the same key since
+        if (entries.get(entry.key) == entry) {
+            entries.remove(entry.key);
+        }
+    }
+
+    /**
+     * @return The number of requests in flight, in total and per tag, and how many ended each way.
+     */
+    synchronized JSONObject getStats() throws JSONException {
+        JSONObject tags = new JSONObject();
+        for (Entry entry : entries.values()) {
+            if (entry.tag != null) {
+                tags.put(entry.tag, tags.optInt(entry.tag) + 1);
+            }
+        }
+        JSONObject stats = new JSONObject();
+        stats.put("outstandingCount", entries.size());
+        stats.put("outstandingByTag", tags);
+        stats.put("completedCount", completed);
+        stats.put("cancelledCount", cancelled - timedOut);
+        stats.put("timedOutCount", timedOut);
+        return stats;
+    }
+}
@@ -0,0 +1,336 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.ca.mas.foundation.MAS;
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASRequest;
+import com.ca.mas.foundation.MASResponse;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders gateway invocations by priority class and caps how many of them are in flight, in total and per host.
+ * Classes are served by weighted round robin so a steady flow of interactive requests cannot starve background ones.
+ * Requests to a host whose circuit is open fail fast, transient failures of retryable requests are queued again
+ * after the delay of the retry policy.
+ */
+class MASRequestScheduler {
+    private static final String TAG = MASRequestScheduler.class.getCanonicalName();
+
+    static final int PRIORITY_INTERACTIVE = 0;
+    static final int PRIORITY_NORMAL = 1;
+    static final int PRIORITY_BACKGROUND = 2;
+    private static final String[] PRIORITY_NAMES = {"interactive", "normal", "background"};
+    private static final int[] PRIORITY_WEIGHTS = {4, 2, 1};
+
+    private static final int DEFAULT_MAX_CONCURRENT = 8;
+    private static final int DEFAULT_MAX_PER_HOST = 4;
+
+    private final List<ArrayDeque<Task>> queues = new ArrayList<>(PRIORITY_NAMES.length);
+    private final Map<String, Integer> inFlightPerHost = new HashMap<>();
+    private final int[] credits = new int[PRIORITY_NAMES.length];
+    private final long[] dispatched = new long[PRIORITY_NAMES.length];
+    private final long[] waitNanos = new long[PRIORITY_NAMES.length];
+    private final long[] maxWaitNanos = new long[PRIORITY_NAMES.length];
+    private int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private int maxPerHost = DEFAULT_MAX_PER_HOST;
+    private int inFlight;
+    private long retried;
+    private long rejected;
+
+    private final MASCircuitBreaker circuitBreaker = new MASCircuitBreaker();
+    private final MASRetryPolicy retryPolicy = new MASRetryPolicy();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private static class Task {
+        private final int priority;
+        private final String host;
+        private final boolean retry;
+        private final MASRequest request;
+        private final MASCallback<MASResponse<Object>> callback;
+        private long enqueuedAt = System.nanoTime();
+        private int attempt = 1;
+        private long requestId = -1;
+        private long traceId;
+        private boolean cancelled;
+
+        private Task(int priority, String host, boolean retry, MASRequest request, MASCallback<MASResponse<Object>> callback) {
+            this.priority = priority;
+            this.host = host;
+            this.retry = retry;
+            this.request = request;
+            this.callback = callback;
+        }
+    }
+
+    MASRequestScheduler() {
+        for (int i = 0; i < PRIORITY_NAMES.length; i++) {
+            queues.add(new ArrayDeque<Task>());
+        }
+        System.arraycopy(PRIORITY_WEIGHTS, 0, credits, 0, credits.length);
+    }
+
+    /**
+     * @return The priority class matching the value, normal if it is out of range.
+     */
+    static int toPriority(int value) {
+        return value >= PRIORITY_INTERACTIVE && value <= PRIORITY_BACKGROUND ? value : PRIORITY_NORMAL;
+    }
+
+    synchronized void setLimits(int maxConcurrent, int maxPerHost) {
+        if (maxConcurrent > 0) {
+            this.maxConcurrent = maxConcurrent;
+        }
+        if (maxPerHost > 0) {
+            this.maxPerHost = maxPerHost;
+        }
+    }
+
+    MASCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    MASRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Queues the request and invokes it on the gateway as soon as its class and host have a free slot.
+     *
+     * @param priority One of the PRIORITY constants.
+     * @param host     The host the request is sent to.
+     * @param retry    Whether transient failures of the request are retried.
+     * @return Cancels the request: removes it from the queue, or cancels it on the gateway once sent. The callback
+     * is not invoked when the request is removed from the queue.
+     */
+    MASRequestRegistry.Canceller invoke(int priority, String host, boolean retry, MASRequest request, MASCallback<MASResponse<Object>> callback) {
+        final Task task = new Task(toPriority(priority), host, retry, request, callback);
+        enqueue(task);
+        return new MASRequestRegistry.Canceller() {
+            @Override
+            public void cancel() {
+                MASRequestScheduler.this.cancel(task);
+            }
+        };
+    }
+
+    private void cancel(Task task) {
+        long requestId;
+        synchronized (this) {
+            task.cancelled = true;
+            if (queues.get(task.priority).remove(task)) {
+                return;
+            }
+            requestId = task.requestId;
+        }
+        if (requestId != -1) {
+            MAS.cancelRequest(requestId);
+        }
+    }
+
+    private void enqueue(Task task) {
+        synchronized (this) {
+            if (task.cancelled) {
+                return;
+            }
+            task.enqueuedAt = System.nanoTime();
+            queues.get(task.priority).add(task);
+        }
+        drain();
+    }
+
+    /**
+     * Dispatches queued requests until every slot is taken or no queued request fits in a free one.
+     */
+    private void drain() {
+        Task task;
+        while ((task = next()) != null) {
+            final Task current = task;
+            if (!circuitBreaker.allowRequest(current.host)) {
+                synchronized (this) {
+                    rejected++;
+                }
+                release(current);
+                current.callback.onError(new MASCircuitBreaker.OpenException(current.host));
+                continue;
+            }
+            if (MASTracer.isEnabled()) {
+                current.traceId = MASTracer.nextId();
+                MASTracer.begin("gateway", "MAS.invoke " + current.host, current.traceId);
+            }
+            try {
+                long requestId = MAS.invoke(current.request, new MASCallback<MASResponse<Object>>() {
+                    @Override
+                    public void onSuccess(MASResponse<Object> masResponse) {
+                        endTrace(current);
+                        circuitBreaker.onSuccess(current.host);
+                        release(current);
+                        current.callback.onSuccess(masResponse);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        endTrace(current);
+                        onFailure(current, throwable);
+                    }
+                });
+                boolean cancelled;
+                synchronized (this) {
+                    current.requestId = requestId;
+                    cancelled = current.cancelled;
+                }
+                if (cancelled) {
+                    MAS.cancelRequest(requestId);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, e.getMessage(), e);
+                endTrace(current);
+                onFailure(current, e);
+            }
+        }
+    }
+
+    private static void endTrace(Task task) {
+        if (task.traceId != 0) {
+            MASTracer.end("gateway", "MAS.invoke " + task.host, task.traceId);
+            task.traceId = 0;
+        }
+    }
+
+    private void onFailure(final Task task, Throwable throwable) {
+        boolean transientFailure = MASRetryPolicy.isTransient(throwable);
+        if (transientFailure) {
+            circuitBreaker.onFailure(task.host);
+        } else if (MASRetryPolicy.isAnswered(throwable)) {
+            // The gateway answered, the failure is the request's and says nothing about the health of the host
+            circuitBreaker.onSuccess(task.host);
+        } else {
+            circuitBreaker.onAbandoned(task.host);
+        }
+        long delay = task.retry && transientFailure && !task.cancelled ? retryPolicy.getDelayMillis(task.attempt, throwable) : MASRetryPolicy.NO_RETRY;
+        release(task);
+        if (delay == MASRetryPolicy.NO_RETRY) {
+            task.callback.onError(throwable);
+            return;
+        }
+        synchronized (this) {
+            retried++;
+        }
+        task.attempt++;
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                enqueue(task);
+            }
+        }, delay);
+    }
+
+    private void release(Task task) {
+        synchronized (this) {
+            inFlight--;
+            Integer count = inFlightPerHost.get(task.host);
+            if (count == null || count <= 1) {
+                inFlightPerHost.remove(task.host);
+            } else {
+                inFlightPerHost.put(task.host, count - 1);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Picks the next request to dispatch and takes its slots, or returns null.
+     */
+    private synchronized Task next() {
+        if (inFlight >= maxConcurrent) {
+            return null;
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            for (int priority = 0; priority < queues.size(); priority++) {
+                if (credits[priority] == 0) {
+                    continue;
+                }
+                Task task = poll(queues.get(priority));
+                if (task != null) {
+                    credits[priority]--;
+                    return take(task);
+                }
+            }
+            // Every class with a dispatchable request used its credits, start a new round
+            System.arraycopy(PRIORITY_WEIGHTS, 0, credits, 0, credits.length);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the oldest request of the queue whose host is below its cap.
+     */
+    private Task poll(ArrayDeque<Task> queue) {
+        Iterator<Task> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Task task = iterator.next();
+            Integer count = inFlightPerHost.get(task.host);
+            if (count == null || count < maxPerHost) {
+                iterator.remove();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private Task take(Task task) {
+        inFlight++;
+        Integer count = inFlightPerHost.get(task.host);
+        inFlightPerHost.put(task.host, count == null ? 1 : count + 1);
+        long wait = System.nanoTime() - task.enqueuedAt;
+        if (MASTracer.isEnabled()) {
+            MASTracer.complete("scheduler", "wait " + PRIORITY_NAMES[task.priority], task.enqueuedAt);
+        }
+        dispatched[task.priority]++;
+        waitNanos[task.priority] += wait;
+        maxWaitNanos[task.priority] = Math.max(maxWaitNanos[task.priority], wait);
+        return task;
+    }
+
+    synchronized JSONObject getStats() throws JSONException {
+        JSONObject classes = new JSONObject();
+        for (int i = 0; i < PRIORITY_NAMES.length; i++) {
+            JSONObject stats = new JSONObject();
+            stats.put("queueDepth", queues.get(i).size());
+            stats.put("dispatchedCount", dispatched[i]);
+            stats.put("averageWaitMillis", dispatched[i] == 0 ? 0 : waitNanos[i] / dispatched[i] / 1000000.0);
+            stats.put("maxWaitMillis", maxWaitNanos[i] / 1000000.0);
+            classes.put(PRIORITY_NAMES[i], stats);
+        }
+        JSONObject hosts = new JSONObject();
+        for (Map.Entry<String, Integer> entry : inFlightPerHost.entrySet()) {
+            hosts.put(entry.getKey(), entry.getValue());
+        }
+        JSONObject result = new JSONObject();
+        result.put("inFlightCount", inFlight);
+        result.put("maxConcurrent", maxConcurrent);
+        result.put("maxPerHost", maxPerHost);
+        result.put("inFlightPerHost", hosts);
+        result.put("retriedCount", retried);
+        result.put("circuitOpenRejectedCount", rejected);
+        result.put("classes", classes);
+        return result;
+    }
+}
@@ -0,0 +1,599 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in cache of gateway GET responses. Entries live in a byte bounded in-memory LRU backed by an on-disk tier,
+ * both partitioned per authenticated user. Freshness follows the Cache-Control and Expires response headers, stale
+ * entries carrying an ETag or Last-Modified validator are revalidated with a conditional request. The disk is only
+ * accessed from the disk executor, an index of the files on disk and their total size is kept in memory.
+ */
+class MASResponseCache {
+    private static final String TAG = MASResponseCache.class.getCanonicalName();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long DEFAULT_MEMORY_MAX_BYTES = 4 * 1024 * 1024;
+    private static final long DEFAULT_DISK_MAX_BYTES = 20 * 1024 * 1024;
+    private static final String ANONYMOUS = "anonymous";
+
+    private static final String NODE_RESPONSE = "response";
+    private static final String NODE_ETAG = "etag";
+    private static final String NODE_LAST_MODIFIED = "lastModified";
+    private static final String NODE_EXPIRES_AT = "expiresAt";
+    private static final String NODE_MUST_REVALIDATE = "mustRevalidate";
+
+    private static MASResponseCache instance;
+
+    private final File directory;
+    private final long memoryMaxBytes;
+    private final long diskMaxBytes;
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    // The files of the on-disk tier and their length, least recently written first
+    private final LinkedHashMap<String, Long> diskFiles = new LinkedHashMap<>();
+    private final AtomicLong diskBytes = new AtomicLong();
+    private volatile boolean diskIndexed;
+    private String activeUser;
+    private long memoryBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Receives the result of a lookup, on the disk executor thread if the entry had to be read from disk.
+     */
+    interface Callback {
+        void onEntry(Entry entry);
+    }
+
+    /**
+     * A cached response envelope and its freshness information.
+     */
+    static class Entry {
+        private final JSONObject response;
+        private final String etag;
+        private final String lastModified;
+        private final boolean mustRevalidate;
+        private final int size;
+        private volatile long expiresAt;
+
+        private Entry(JSONObject response, String etag, String lastModified, long expiresAt, boolean mustRevalidate, int size) {
+            this.response = response;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+            this.mustRevalidate = mustRevalidate;
+            this.size = size;
+        }
+
+        JSONObject getResponse() {
+            return response;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        String getLastModified() {
+            return lastModified;
+        }
+
+        boolean isFresh() {
+            return !mustRevalidate && System.currentTimeMillis() < expiresAt;
+        }
+
+        boolean canRevalidate() {
+            return etag != null || lastModified != null;
+        }
+    }
+
+    private MASResponseCache(File directory, long memoryMaxBytes, long diskMaxBytes) {
+        this.directory = directory;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.diskMaxBytes = diskMaxBytes;
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                indexDisk();
+            }
+        });
+    }
+
+    /**
+     * Creates the cache on first call, subsequent calls are ignored.
+     *
+     * @param directory The directory of the on-disk tier.
+     */
+    static synchronized void initialize(File directory) {
+        if (instance == null) {
+            instance = new MASResponseCache(directory, DEFAULT_MEMORY_MAX_BYTES, DEFAULT_DISK_MAX_BYTES);
+        }
+    }
+
+    /**
+     * @return The cache, or null if it has not been initialized.
+     */
+    static synchronized MASResponseCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param user The name of the authenticated user, null if none.
+     * @return The partition of the user in the cache keys.
+     */
+    static String partition(String user) {
+        return user == null || user.isEmpty() ? ANONYMOUS : user;
+    }
+
+    /**
+     * Looks the key up in memory first and then on disk. The callback is invoked on the calling thread unless the
+     * entry has to be read from disk.
+     *
+     * @param user The name of the authenticated user, null if none.
+     * @param key  The request key.
+     */
+    void get(final String user, final String key, final Callback callback) {
+        onUser(user);
+        final String cacheKey = partition(user) + '\n' + key;
+        Entry entry;
+        synchronized (memory) {
+            entry = memory.get(cacheKey);
+        }
+        if (entry != null || (diskIndexed && !isOnDisk(getDiskName(user, key)))) {
+            callback.onEntry(count(entry));
+            return;
+        }
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Entry entry = readFromDisk(user, key);
+                if (entry != null) {
+                    putInMemory(cacheKey, entry);
+                }
+                callback.onEntry(count(entry));
+            }
+        });
+    }
+
+    private Entry count(Entry entry) {
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else if (entry.isFresh()) {
+            hits.incrementAndGet();
+        } else {
+            revalidations.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the response envelope if its headers allow it.
+     *
+     * @param user     The name of the authenticated user, null if none.
+     * @param key      The request key.
+     * @param response The response envelope delivered to the JavaScript layer.
+     * @param headers  The response headers.
+     */
+    void put(String user, String key, JSONObject response, Map<String, List<String>> headers) {
+        onUser(user);
+        String cacheControl = firstHeader(headers, "Cache-Control");
+        if (cacheControl != null && cacheControl.toLowerCase(Locale.US).contains("no-store")) {
+            return;
+        }
+        long expiresAt = getExpiresAt(cacheControl, firstHeader(headers, "Expires"));
+        boolean mustRevalidate = cacheControl != null && cacheControl.toLowerCase(Locale.US).contains("no-cache");
+        String etag = firstHeader(headers, "ETag");
+        String lastModified = firstHeader(headers, "Last-Modified");
+        if (expiresAt <= System.currentTimeMillis() && etag == null && lastModified == null) {
+            return;
+        }
+        final String serialized = response.toString();
+        Entry entry = new Entry(response, etag, lastModified, expiresAt, mustRevalidate, serialized.length() * 2);
+        putInMemory(partition(user) + '\n' + key, entry);
+        stores.incrementAndGet();
+        writeToDisk(user, key, entry, serialized);
+    }
+
+    /**
+     * Refreshes the freshness of an entry after the gateway answered a conditional request with 304 Not Modified.
+     */
+    void notModified(String user, String key, Entry entry, Map<String, List<String>> headers) {
+        notModified.incrementAndGet();
+        String cacheControl = firstHeader(headers, "Cache-Control");
+        entry.expiresAt = getExpiresAt(cacheControl, firstHeader(headers, "Expires"));
+        try {
+            writeToDisk(user, key, entry, entry.response.toString());
+        } catch (Exception e) {
+            Log.w(TAG, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Drops every entry of a user, typically on logout.
+     */
+    void evictUser(String user) {
+        evict(Collections.singleton(partition(user)), false);
+    }
+
+    /**
+     * The entries are stored in the clear, a request for another user than the previous one means the session changed
+     * hands without a logout: the entries of every other user are dropped, including the ones of previous runs.
+     */
+    private void onUser(String user) {
+        if (user == null || user.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            if (user.equals(activeUser)) {
+                return;
+            }
+            activeUser = user;
+        }
+        evict(new HashSet<>(Arrays.asList(partition(user), ANONYMOUS)), true);
+    }
+
+    /**
+     * @param partitions The partitions to drop, or the ones to keep if keep is true.
+     */
+    private void evict(Set<String> partitions, final boolean keep) {
+        synchronized (memory) {
+            Iterator<Map.Entry<String, Entry>> iterator = memory.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> next = iterator.next();
+                String partition = next.getKey().substring(0, next.getKey().indexOf('\n'));
+                if (partitions.contains(partition) != keep) {
+                    memoryBytes -= next.getValue().size;
+                    iterator.remove();
+                }
+            }
+        }
+        final Set<String> userNames = new HashSet<>();
+        for (String partition : partitions) {
+            userNames.add(hash(partition));
+        }
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (diskFiles) {
+                    Iterator<Map.Entry<String, Long>> files = diskFiles.entrySet().iterator();
+                    while (files.hasNext()) {
+                        Map.Entry<String, Long> file = files.next();
+                        if (userNames.contains(file.getKey().substring(0, file.getKey().indexOf('/'))) != keep) {
+                            diskBytes.addAndGet(-file.getValue());
+                            files.remove();
+                        }
+                    }
+                }
+                File[] users = directory.listFiles();
+                if (users != null) {
+                    for (File userDirectory : users) {
+                        if (userNames.contains(userDirectory.getName()) != keep) {
+                            delete(userDirectory);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops every entry of every user.
+     */
+    void clear() {
+        synchronized (memory) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                delete(directory);
+                synchronized (diskFiles) {
+                    diskFiles.clear();
+                }
+                diskBytes.set(0);
+            }
+        });
+    }
+
+    JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("hitCount", hits.get());
+        stats.put("missCount", misses.get());
+        stats.put("revalidationCount", revalidations.get());
+        stats.put("notModifiedCount", notModified.get());
+        stats.put("storeCount", stores.get());
+        stats.put("evictionCount", evictions.get());
+        synchronized (memory) {
+            stats.put("entryCount", memory.size());
+            stats.put("memoryBytes", memoryBytes);
+        }
+        stats.put("memoryMaxBytes", memoryMaxBytes);
+        stats.put("diskBytes", diskBytes.get());
+        stats.put("diskMaxBytes", diskMaxBytes);
+        return stats;
+    }
+
+    private void putInMemory(String cacheKey, Entry entry) {
+        synchronized (memory) {
+            Entry previous = memory.put(cacheKey, entry);
+            if (previous != null) {
+                memoryBytes -= previous.size;
+            }
+            memoryBytes += entry.size;
+            Iterator<Entry> iterator = memory.values().iterator();
+            while (memoryBytes > memoryMaxBytes && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                if (eldest == entry) {
+                    break;
+                }
+                memoryBytes -= eldest.size;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return The name of the file of an entry relative to the cache directory, as kept in the disk index.
+     */
+    private static String getDiskName(String user, String key) {
+        return hash(partition(user)) + '/' + hash(key);
+    }
+
+    private boolean isOnDisk(String name) {
+        synchronized (diskFiles) {
+            return diskFiles.containsKey(name);
+        }
+    }
+
+    /**
+     * Builds the disk index and the running byte count from the files left by previous runs, in the order they were
+     * written. This is the only scan of the directory.
+     */
+    private void indexDisk() {
+        List<File> found = new ArrayList<>();
+        File[] users = directory.listFiles();
+        if (users != null) {
+            for (File userDirectory : users) {
+                File[] files = userDirectory.listFiles();
+                if (files != null) {
+                    Collections.addAll(found, files);
+                }
+            }
+        }
+        final Map<File, Long> writtenAt = new HashMap<>();
+        for (File file : found) {
+            writtenAt.put(file, file.lastModified());
+        }
+        Collections.sort(found, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return writtenAt.get(a).compareTo(writtenAt.get(b));
+            }
+        });
+        long total = 0;
+        synchronized (diskFiles) {
+            for (File file : found) {
+                long length = file.length();
+                diskFiles.put(getDiskName(file), length);
+                total += length;
+            }
+        }
+        diskBytes.addAndGet(total);
+        diskIndexed = true;
+    }
+
+    private static String getDiskName(File file) {
+        return file.getParentFile().getName() + '/' + file.getName();
+    }
+
+    private void deleteFromDisk(File file) {
+        if (file.delete() || !file.exists()) {
+            Long length;
+            synchronized (diskFiles) {
+                length = diskFiles.remove(getDiskName(file));
+            }
+            if (length != null) {
+                diskBytes.addAndGet(-length);
+            }
+        }
+    }
+
+    private Entry readFromDisk(String user, String key) {
+        File file = new File(directory, getDiskName(user, key));
+        if (!file.exists()) {
+            return null;
+        }
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            byte[] content = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < content.length && (read = inputStream.read(content, offset, content.length - offset)) != -1) {
+                offset += read;
+            }
+            String serialized = new String(content, 0, offset, UTF_8);
+            JSONObject json = new JSONObject(serialized);
+            JSONObject response = json.getJSONObject(NODE_RESPONSE);
+            return new Entry(response, json.optString(NODE_ETAG, null), json.optString(NODE_LAST_MODIFIED, null),
+                    json.optLong(NODE_EXPIRES_AT), json.optBoolean(NODE_MUST_REVALIDATE), serialized.length() * 2);
+        } catch (Exception e) {
+            Log.w(TAG, "Discarding unreadable cache entry " + file.getName(), e);
+            deleteFromDisk(file);
+            return null;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private void writeToDisk(String user, String key, final Entry entry, final String serializedResponse) {
+        final File userDirectory = new File(directory, hash(partition(user)));
+        final File file = new File(userDirectory, hash(key));
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                OutputStream outputStream = null;
+                try {
+                    JSONObject json = new JSONObject();
+                    json.put(NODE_ETAG, entry.etag);
+                    json.put(NODE_LAST_MODIFIED, entry.lastModified);
+                    json.put(NODE_EXPIRES_AT, entry.expiresAt);
+                    json.put(NODE_MUST_REVALIDATE, entry.mustRevalidate);
+                    json.put(NODE_RESPONSE, new JSONObject(serializedResponse));
+                    if (!userDirectory.exists() && !userDirectory.mkdirs()) {
+                        return;
+                    }
+                    byte[] content = json.toString().getBytes(UTF_8);
+                    outputStream = new FileOutputStream(file);
+                    outputStream.write(content);
+                    Long previousLength;
+                    synchronized (diskFiles) {
+                        // Moved to the most recently written end
+                        previousLength = diskFiles.remove(getDiskName(file));
+                        diskFiles.put(getDiskName(file), (long) content.length);
+                    }
+                    diskBytes.addAndGet(content.length - (previousLength != null ? previousLength : 0));
+                } catch (Exception e) {
+                    Log.w(TAG, e.getMessage(), e);
+                } finally {
+                    if (outputStream != null) {
+                        try {
+                            outputStream.close();
+                        } catch (IOException ignore) {
+                        }
+                    }
+                }
+                trimDisk();
+            }
+        });
+    }
+
+    /**
+     * Deletes the least recently written files until the on-disk tier fits in its budget, they are taken from the
+     * disk index without listing the directory.
+     */
+    private void trimDisk() {
+        while (diskBytes.get() > diskMaxBytes) {
+            File oldest;
+            synchronized (diskFiles) {
+                if (diskFiles.isEmpty()) {
+                    return;
+                }
+                oldest = new File(directory, diskFiles.keySet().iterator().next());
+            }
+            deleteFromDisk(oldest);
+            if (oldest.exists()) {
+                // Not deletable, the loop would pick it again
+                return;
+            }
+        }
+    }
+
+    private static long getExpiresAt(String cacheControl, String expires) {
+        long now = System.currentTimeMillis();
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                String trimmed = directive.trim().toLowerCase(Locale.US);
+                if (trimmed.startsWith("max-age=")) {
+                    try {
+                        return now + Long.parseLong(trimmed.substring("max-age=".length())) * 1000;
+                    } catch (NumberFormatException ignore) {
+                    }
+                }
+            }
+        }
+        if (expires != null) {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                Date date = format.parse(expires);
+                return date.getTime();
+            } catch (ParseException ignore) {
+            }
+        }
+        return now;
+    }
+
+    private static String firstHeader(Map<String, List<String>> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
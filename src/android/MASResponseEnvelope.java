@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.util.Base64;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the response envelope <code>{MASResponseInfoBodyInfoKey, MASResponseInfoHeaderInfoKey}</code> as JSON text
+ * into one buffer, sized from the Content-Length of the response. A JSON body is walked straight into the buffer
+ * rather than serialized on its own and copied, text bodies are escaped into it. The text is sent with
+ * MASCordovaPlugin#successJson, no JSONObject tree of the envelope is built.
+ */
+final class MASResponseEnvelope {
+    private static final String BODY_KEY = "MASResponseInfoBodyInfoKey";
+    private static final String HEADERS_KEY = "MASResponseInfoHeaderInfoKey";
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final int MAX_INITIAL_CAPACITY = 4 * 1024 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private MASResponseEnvelope() {
+    }
+
+    /**
+     * @param content    The body content: a JSON object or array, text or bytes.
+     * @param headers    The response headers, the first value of each one is kept.
+     * @param projection The parts of the response to keep, may be null to keep all of it.
+     * @return The envelope as JSON text, or null if the content is of a type the envelope does not write.
+     */
+    static String write(Object content, Map<String, List<String>> headers, MASResponseProjection projection) {
+        if (projection != null) {
+            content = projection.projectBody(content);
+        }
+        if (content != null && !(content instanceof JSONObject) && !(content instanceof JSONArray)
+                && !(content instanceof String) && !(content instanceof byte[])) {
+            return null;
+        }
+        boolean writeHeaders = headers != null && (projection == null || projection.keepsHeaders());
+
+        StringBuilder builder = new StringBuilder(getCapacity(content, headers, writeHeaders));
+        builder.append('{');
+        if (content != null) {
+            builder.append('"').append(BODY_KEY).append("\":");
+            if (content instanceof byte[]) {
+                // Binary content travels Base64 encoded inside a JSON result, Base64 needs no escaping
+                builder.append('"').append(Base64.encodeToString((byte[]) content, Base64.NO_WRAP)).append('"');
+            } else {
+                try {
+                    appendValue(builder, content);
+                } catch (JSONException e) {
+                    // A number JSON cannot represent, left to the JSONObject envelope to report
+                    return null;
+                }
+            }
+        }
+        if (writeHeaders) {
+            if (content != null) {
+                builder.append(',');
+            }
+            builder.append('"').append(HEADERS_KEY).append("\":{");
+            boolean first = true;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                String name = header.getKey();
+                List<String> values = header.getValue();
+                if (name == null || values == null || values.isEmpty() || values.get(0) == null
+                        || (projection != null && !projection.keepsHeader(name))) {
+                    continue;
+                }
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                appendQuoted(builder, name);
+                builder.append(':');
+                appendQuoted(builder, values.get(0));
+            }
+            builder.append('}');
+        }
+        builder.append('}');
+        return builder.toString();
+    }
+
+    /**
+     * Estimates the length of the envelope from the text or bytes of the body, or from the Content-Length of a
+     * parsed JSON body.
+     */
+    private static int getCapacity(Object content, Map<String, List<String>> headers, boolean writeHeaders) {
+        long capacity = 64;
+        if (content instanceof String) {
+            // Room for some escaped characters
+            int length = ((String) content).length();
+            capacity += length + length / 16 + 2;
+        } else if (content instanceof byte[]) {
+            capacity += (((byte[]) content).length + 2) / 3 * 4 + 2;
+        } else if (content != null) {
+            capacity += getContentLength(headers);
+        }
+        if (writeHeaders) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                List<String> values = header.getValue();
+                if (header.getKey() != null && values != null && !values.isEmpty() && values.get(0) != null) {
+                    capacity += header.getKey().length() + values.get(0).length() + 6;
+                }
+            }
+        }
+        return (int) Math.min(capacity, MAX_INITIAL_CAPACITY);
+    }
+
+    private static long getContentLength(Map<String, List<String>> headers) {
+        if (headers == null) {
+            return 0;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            List<String> values = header.getValue();
+            if (CONTENT_LENGTH.equalsIgnoreCase(header.getKey()) && values != null && !values.isEmpty()) {
+                try {
+                    return Math.max(0, Long.parseLong(values.get(0).trim()));
+                } catch (NumberFormatException ignore) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Appends a JSON value the way JSONObject#toString() writes it.
+     */
+    private static void appendValue(StringBuilder builder, Object value) throws JSONException {
+        if (value == null || value == JSONObject.NULL) {
+            builder.append("null");
+        } else if (value instanceof String) {
+            appendQuoted(builder, (String) value);
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            builder.append('{');
+            Iterator<String> names = object.keys();
+            boolean first = true;
+            while (names.hasNext()) {
+                String name = names.next();
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                appendQuoted(builder, name);
+                builder.append(':');
+                appendValue(builder, object.opt(name));
+            }
+            builder.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            builder.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                appendValue(builder, array.opt(i));
+            }
+            builder.append(']');
+        } else if (value instanceof Boolean) {
+            builder.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Number) {
+            builder.append(JSONObject.numberToString((Number) value));
+        } else {
+            appendQuoted(builder, value.toString());
+        }
+    }
+
+    /**
+     * Appends a JSON string. Line and paragraph separators are escaped as well, the bridge may evaluate the message
+     * as script.
+     */
+    static void appendQuoted(StringBuilder builder, String value) {
+        builder.append('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            builder.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    builder.append("\\u").append(HEX[c >> 12 & 0xf]).append(HEX[c >> 8 & 0xf])
+                            .append(HEX[c >> 4 & 0xf]).append(HEX[c & 0xf]);
+            }
+        }
+        builder.append(value, start, length).append('"');
+    }
+}
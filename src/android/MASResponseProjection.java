@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Selects the parts of a response the caller needs before it crosses the bridge. Body fields are JSON Pointers
+ * ("/data/items/0/name") or dot paths ("data.items.0.name"), "*" selects every element of an array. The projected
+ * body keeps the structure of the original one, with only the selected members, array elements which are not
+ * selected are dropped. Headers are selected by name, an empty selection leaves the headers out.
+ */
+class MASResponseProjection {
+    private static final String WILDCARD = "*";
+
+    private final List<String[]> fields;
+    private final Set<String> headers;
+
+    private MASResponseProjection(List<String[]> fields, Set<String> headers) {
+        this.fields = fields;
+        this.headers = headers;
+    }
+
+    /**
+     * @param fields  The body fields to keep, or null to keep the whole body.
+     * @param headers The header names to keep, or null to keep every header.
+     * @return The projection, or null if both selections are null.
+     */
+    static MASResponseProjection parse(JSONArray fields, JSONArray headers) throws MASCordovaException {
+        if (fields == null && headers == null) {
+            return null;
+        }
+        List<String[]> paths = null;
+        if (fields != null) {
+            paths = new ArrayList<>(fields.length());
+            for (int i = 0; i < fields.length(); i++) {
+                String field = fields.optString(i, null);
+                if (field == null) {
+                    throw new MASCordovaException("Invalid field at index " + i);
+                }
+                paths.add(toPath(field));
+            }
+        }
+        Set<String> names = null;
+        if (headers != null) {
+            names = new HashSet<>();
+            for (int i = 0; i < headers.length(); i++) {
+                names.add(headers.optString(i).toLowerCase(Locale.US));
+            }
+        }
+        return new MASResponseProjection(paths, names);
+    }
+
+    /**
+     * @return The member names or array indexes of a JSON Pointer or dot path.
+     */
+    static String[] toPath(String field) {
+        if (field.isEmpty()) {
+            return new String[0];
+        }
+        if (!field.startsWith("/")) {
+            return field.split("\\.", -1);
+        }
+        String[] tokens = field.substring(1).split("/", -1);
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = tokens[i].replace("~1", "/").replace("~0", "~");
+        }
+        return tokens;
+    }
+
+    /**
+     * @return true if the header is selected.
+     */
+    boolean keepsHeader(String name) {
+        return headers == null || headers.contains(name.toLowerCase(Locale.US));
+    }
+
+    /**
+     * @return false if the headers are left out.
+     */
+    boolean keepsHeaders() {
+        return headers == null || !headers.isEmpty();
+    }
+
+    /**
+     * Projects a response body. A body which is text is parsed first if it holds a JSON document, any other body is
+     * returned as is.
+     */
+    Object projectBody(Object content) {
+        if (fields == null || content == null) {
+            return content;
+        }
+        if (content instanceof String) {
+            String text = ((String) content).trim();
+            if (!text.startsWith("{") && !text.startsWith("[")) {
+                return content;
+            }
+            try {
+                content = new JSONTokener(text).nextValue();
+            } catch (JSONException e) {
+                return content;
+            }
+        }
+        if (!(content instanceof JSONObject) && !(content instanceof JSONArray)) {
+            return content;
+        }
+        Object projected = project(content, fields, 0);
+        return projected != null ? projected : new JSONObject();
+    }
+
+    /**
+     * @return The projected value, or null if no selected field exists in it.
+     */
+    private static Object project(Object node, List<String[]> paths, int depth) {
+        for (String[] path : paths) {
+            if (path.length == depth) {
+                return node;
+            }
+        }
+        if (node instanceof JSONObject) {
+            JSONObject object = (JSONObject) node;
+            Map<String, List<String[]>> byName = groupByToken(paths, depth);
+            JSONObject result = new JSONObject();
+            for (Map.Entry<String, List<String[]>> entry : byName.entrySet()) {
+                Object child = object.opt(entry.getKey());
+                Object projected = child != null ? project(child, entry.getValue(), depth + 1) : null;
+                if (projected != null) {
+                    try {
+                        result.put(entry.getKey(), projected);
+                    } catch (JSONException ignore) {
+                    }
+                }
+            }
+            return result.length() > 0 ? result : null;
+        }
+        if (node instanceof JSONArray) {
+            JSONArray array = (JSONArray) node;
+            Map<String, List<String[]>> byIndex = groupByToken(paths, depth);
+            List<String[]> wildcard = byIndex.get(WILDCARD);
+            JSONArray result = new JSONArray();
+            for (int i = 0; i < array.length(); i++) {
+                List<String[]> selected = byIndex.get(String.valueOf(i));
+                if (wildcard != null) {
+                    if (selected == null) {
+                        selected = wildcard;
+                    } else {
+                        selected = new ArrayList<>(selected);
+                        selected.addAll(wildcard);
+                    }
+                }
+                if (selected == null) {
+                    continue;
+                }
+                Object projected = project(array.opt(i), selected, depth + 1);
+                if (projected != null) {
+                    result.put(projected);
+                }
+            }
+            return result.length() > 0 ? result : null;
+        }
+        return null;
+    }
+
+    private static Map<String, List<String[]>> groupByToken(List<String[]> paths, int depth) {
+        Map<String, List<String[]>> groups = new LinkedHashMap<>();
+        for (String[] path : paths) {
+            List<String[]> group = groups.get(path[depth]);
+            if (group == null) {
+                group = new ArrayList<>(1);
+                groups.put(path[depth], group);
+            }
+            group.add(path);
+        }
+        return groups;
+    }
+
+    /**
+     * Projects a response already built for the bridge, such as a cached one.
+     */
+    JSONObject projectResponse(JSONObject response, String bodyKey, String headersKey) {
+        JSONObject result = new JSONObject();
+        try {
+            Object body = response.opt(bodyKey);
+            if (body != null) {
+                result.put(bodyKey, projectBody(body));
+            }
+            JSONObject headerJson = response.optJSONObject(headersKey);
+            if (headerJson != null && keepsHeaders()) {
+                JSONObject selected = new JSONObject();
+                Iterator<String> names = headerJson.keys();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    if (keepsHeader(name)) {
+                        selected.put(name, headerJson.get(name));
+                    }
+                }
+                result.put(headersKey, selected);
+            }
+        } catch (JSONException ignore) {
+        }
+        return result;
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import com.ca.mas.core.error.TargetApiException;
+import com.ca.mas.foundation.MAS;
+import com.ca.mas.foundation.MASResponse;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Decides whether a failed gateway invocation is retried and after which delay: exponential backoff with full
+ * jitter, or the delay requested by the Retry-After header of the response.
+ */
+class MASRetryPolicy {
+    static final long NO_RETRY = -1;
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_BASE_DELAY_MILLIS = 250;
+    private static final long DEFAULT_MAX_DELAY_MILLIS = 8000;
+    private static final long DEFAULT_MAX_RETRY_AFTER_MILLIS = 30000;
+
+    private final Random random = new Random();
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+    private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+    private long maxRetryAfterMillis = DEFAULT_MAX_RETRY_AFTER_MILLIS;
+
+    synchronized void setPolicy(JSONObject policy) {
+        maxAttempts = Math.max(1, policy.optInt("maxAttempts", maxAttempts));
+        baseDelayMillis = Math.max(0, policy.optLong("baseDelayMillis", baseDelayMillis));
+        maxDelayMillis = Math.max(baseDelayMillis, policy.optLong("maxDelayMillis", maxDelayMillis));
+        maxRetryAfterMillis = Math.max(0, policy.optLong("maxRetryAfterMillis", maxRetryAfterMillis));
+    }
+
+    synchronized JSONObject getPolicy() throws JSONException {
+        JSONObject policy = new JSONObject();
+        policy.put("maxAttempts", maxAttempts);
+        policy.put("baseDelayMillis", baseDelayMillis);
+        policy.put("maxDelayMillis", maxDelayMillis);
+        policy.put("maxRetryAfterMillis", maxRetryAfterMillis);
+        return policy;
+    }
+
+    /**
+     * @return true if the error is a gateway overload or a network failure which may not happen again,
+     * as opposed to an error answered by a healthy gateway.
+     */
+    static boolean isTransient(Throwable throwable) {
+        if (throwable instanceof MASCircuitBreaker.OpenException) {
+            return true;
+        }
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MAS.RequestCancelledException) {
+                return false;
+            }
+            if (cause instanceof TargetApiException) {
+                MASResponse response = ((TargetApiException) cause).getResponse();
+                return response != null && isTransient(response.getResponseCode());
+            }
+            if (cause instanceof InterruptedIOException || cause instanceof ConnectException
+                    || cause instanceof NoRouteToHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the error is an HTTP error response of the gateway.
+     */
+    static boolean isAnswered(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TargetApiException) {
+                return ((TargetApiException) cause).getResponse() != null;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTransient(int responseCode) {
+        return responseCode == HTTP_TOO_MANY_REQUESTS
+                || responseCode == HttpURLConnection.HTTP_BAD_GATEWAY
+                || responseCode == HttpURLConnection.HTTP_UNAVAILABLE
+                || responseCode == HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * @param attempt   The number of attempts already made, starting at 1.
+     * @param throwable The error of the last attempt.
+     * @return The delay before the next attempt, or {@link #NO_RETRY}.
+     */
+    synchronized long getDelayMillis(int attempt, Throwable throwable) {
+        if (attempt >= maxAttempts || !isTransient(throwable)) {
+            return NO_RETRY;
+        }
+        long retryAfter = getRetryAfterMillis(throwable);
+        if (retryAfter >= 0) {
+            return retryAfter <= maxRetryAfterMillis ? retryAfter : NO_RETRY;
+        }
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    /**
+     * @return The delay requested by the Retry-After header of the response, -1 if there is none.
+     */
+    private static long getRetryAfterMillis(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TargetApiException) {
+                MASResponse response = ((TargetApiException) cause).getResponse();
+                if (response == null || response.getHeaders() == null) {
+                    return -1;
+                }
+                Map<String, List<String>> headers = response.getHeaders();
+                for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                    if ("Retry-After".equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                        return parseRetryAfter(header.getValue().get(0).trim());
+                    }
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static long parseRetryAfter(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+            } catch (ParseException ignore) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package com.ca.mas.cordova.core;
+
+import android.os.Process;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in tracer of the request lifecycle. Spans are recorded into a bounded ring buffer, the oldest ones being
+ * overwritten, and dumped on request in the Chrome trace-event format which trace viewers such as chrome://tracing or
+ * Perfetto open. Callers check {@link #isEnabled()} before building span names, nothing is recorded while disabled.
+ */
+final class MASTracer {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final char PHASE_COMPLETE = 'X';
+    private static final char PHASE_ASYNC_BEGIN = 'b';
+    private static final char PHASE_ASYNC_END = 'e';
+
+    private static volatile boolean enabled;
+    private static int capacity;
+    private static String[] categories;
+    private static String[] names;
+    private static char[] phases;
+    private static long[] timestamps;
+    private static long[] durations;
+    private static long[] threadIds;
+    private static long[] ids;
+    private static long recorded;
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private MASTracer() {
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return A new id for an asynchronous span.
+     */
+    static long nextId() {
+        return NEXT_ID.incrementAndGet();
+    }
+
+    /**
+     * Enables or disables tracing. Enabling clears the spans recorded so far.
+     *
+     * @param capacity The number of spans kept, 0 for the default.
+     */
+    static synchronized void setEnabled(boolean enable, int capacity) {
+        if (enable) {
+            MASTracer.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+            categories = new String[MASTracer.capacity];
+            names = new String[MASTracer.capacity];
+            phases = new char[MASTracer.capacity];
+            timestamps = new long[MASTracer.capacity];
+            durations = new long[MASTracer.capacity];
+            threadIds = new long[MASTracer.capacity];
+            ids = new long[MASTracer.capacity];
+            recorded = 0;
+        }
+        enabled = enable;
+    }
+
+    /**
+     * Records a span of the current thread.
+     *
+     * @param startNanos The start of the span, from {@link System#nanoTime()}.
+     */
+    static void complete(String category, String name, long startNanos) {
+        if (enabled) {
+            record(PHASE_COMPLETE, category, name, startNanos, System.nanoTime() - startNanos, 0);
+        }
+    }
+
+    /**
+     * Starts an asynchronous span, which may end on another thread.
+     *
+     * @param id Identifies the span together with its category and name.
+     */
+    static void begin(String category, String name, long id) {
+        if (enabled) {
+            record(PHASE_ASYNC_BEGIN, category, name, System.nanoTime(), 0, id);
+        }
+    }
+
+    static void end(String category, String name, long id) {
+        if (enabled) {
+            record(PHASE_ASYNC_END, category, name, System.nanoTime(), 0, id);
+        }
+    }
+
+    private static synchronized void record(char phase, String category, String name, long timestamp, long duration, long id) {
+        if (!enabled) {
+            return;
+        }
+        int slot = (int) (recorded++ % capacity);
+        phases[slot] = phase;
+        categories[slot] = category;
+        names[slot] = name;
+        timestamps[slot] = timestamp;
+        durations[slot] = duration;
+        threadIds[slot] = Thread.currentThread().getId();
+        ids[slot] = id;
+    }
+
+    /**
+     * Writes the recorded spans, oldest first, to the file.
+     *
+     * @return The number of spans written.
+     */
+    static int dump(File file) throws IOException {
+        String[] dumpCategories;
+        String[] dumpNames;
+        char[] dumpPhases;
+        long[] dumpTimestamps;
+        long[] dumpDurations;
+        long[] dumpThreadIds;
+        long[] dumpIds;
+        int count;
+        int first;
+        synchronized (MASTracer.class) {
+            if (names == null) {
+                throw new MASCordovaException("Tracing has never been enabled");
+            }
+            count = (int) Math.min(recorded, capacity);
+            first = (int) (recorded > capacity ? recorded % capacity : 0);
+            dumpCategories = categories.clone();
+            dumpNames = names.clone();
+            dumpPhases = phases.clone();
+            dumpTimestamps = timestamps.clone();
+            dumpDurations = durations.clone();
+            dumpThreadIds = threadIds.clone();
+            dumpIds = ids.clone();
+        }
+        int pid = Process.myPid();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            for (int i = 0; i < count; i++) {
+                int slot = (first + i) % dumpNames.length;
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write("{\"name\":");
+                writer.write(JSONObject.quote(dumpNames[slot]));
+                writer.write(",\"cat\":");
+                writer.write(JSONObject.quote(dumpCategories[slot]));
+                writer.write(",\"ph\":\"");
+                writer.write(dumpPhases[slot]);
+                writer.write("\",\"ts\":");
+                writer.write(String.valueOf(dumpTimestamps[slot] / 1000.0));
+                if (dumpPhases[slot] == PHASE_COMPLETE) {
+                    writer.write(",\"dur\":");
+                    writer.write(String.valueOf(dumpDurations[slot] / 1000.0));
+                } else {
+                    writer.write(",\"id\":");
+                    writer.write(String.valueOf(dumpIds[slot]));
+                }
+                writer.write(",\"pid\":");
+                writer.write(String.valueOf(pid));
+                writer.write(",\"tid\":");
+                writer.write(String.valueOf(dumpThreadIds[slot]));
+                writer.write('}');
+            }
+            writer.write("]}");
+        } finally {
+            writer.close();
+        }
+        return count;
+    }
+}
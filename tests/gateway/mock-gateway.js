@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ *
+ */
+
+/**
+ * Local stand-in for the CA API Gateway, used to load test the plugin without a real gateway. It answers the client
+ * initialization, device registration, token, userinfo, SCIM and logout endpoints used by MAS.start and the login,
+ * and serves any other path as a protected resource. Latency, error rate and payload size are configurable.
+ *
+ * Usage: node mock-gateway.js [--port 8443] [--tls-cert server.pem --tls-key server.key] [--device-cert device.pem]
+ *                             [--latency 20] [--jitter 10] [--error-rate 0.01] [--error-status 503]
+ *                             [--payload-items 20] [--item-size 200] [--scim-total 500]
+ *
+ * The SDK only talks to the gateway over TLS: serve a certificate trusted through the server_certs of the
+ * msso_config.json pointing at this host. Device registration returns the certificate of --device-cert, the SDK
+ * stores it as its client certificate. GET /mock/stats returns the request counts, POST /mock/reset clears them.
+ */
+
+var fs = require('fs'),
+    http = require('http'),
+    https = require('https'),
+    crypto = require('crypto'),
+    url = require('url');
+
+var options = {
+    port: 8443,
+    tlsCert: null,
+    tlsKey: null,
+    deviceCert: null,
+    latency: 0,
+    jitter: 0,
+    errorRate: 0,
+    errorStatus: 503,
+    payloadItems: 20,
+    itemSize: 200,
+    scimTotal: 500
+};
+
+function parseArguments(argv) {
+    for (var i = 0; i < argv.length; i += 2) {
+        var name = argv[i].replace(/^--/, '').replace(/-([a-z])/g, function (match, letter) {
+            return letter.toUpperCase();
+        });
+        if (!options.hasOwnProperty(name) || i + 1 >= argv.length) {
+            throw new Error('Unknown or incomplete option ' + argv[i]);
+        }
+        options[name] = typeof options[name] === 'number' ? Number(argv[i + 1]) : argv[i + 1];
+    }
+}
+
+var stats = {started: new Date().toISOString(), requests: 0, injectedErrors: 0, paths: {}};
+
+function count(path, status) {
+    stats.requests++;
+    var key = path + ' ' + status;
+    stats.paths[key] = (stats.paths[key] || 0) + 1;
+}
+
+function randomToken() {
+    return crypto.randomBytes(16).toString('hex');
+}
+
+function send(response, status, body, headers) {
+    var payload = typeof body === 'string' ? body : JSON.stringify(body);
+    headers = headers || {};
+    if (!headers['Content-Type']) {
+        headers['Content-Type'] = typeof body === 'string' ? 'text/plain' : 'application/json';
+    }
+    headers['Content-Length'] = Buffer.byteLength(payload);
+    response.writeHead(status, headers);
+    response.end(payload);
+}
+
+function filler(size) {
+    var text = '';
+    while (text.length < size) {
+        text += 'lorem ipsum dolor sit amet ';
+    }
+    return text.substring(0, size);
+}
+
+function item(index) {
+    return {id: String(index), name: 'item-' + index, description: filler(options.itemSize)};
+}
+
+function scimUser(index) {
+    return {
+        schemas: ['urn:ietf:params:scim:schemas:core:2.0:User'],
+        id: 'user' + index,
+        userName: 'user' + index,
+        name: {givenName: 'Given' + index, familyName: 'Family' + index, formatted: 'Given' + index + ' Family' + index},
+        emails: [{value: 'user' + index + '@example.com', type: 'work', primary: true}],
+        active: true,
+        meta: {resourceType: 'User', location: '/SCIM/MAS/v2/Users/user' + index}
+    };
+}
+
+var handlers = {
+    'POST /connect/client/initialize': function (request, response) {
+        send(response, 200, {client_id: randomToken(), client_secret: randomToken(), client_expiration: 0});
+    },
+    'POST /connect/device/register': register,
+    'POST /connect/device/register/client': register,
+    'DELETE /connect/device/remove': function (request, response) {
+        send(response, 200, {result: 'removed'});
+    },
+    'POST /auth/oauth/v2/token': function (request, response) {
+        send(response, 200, {
+            access_token: randomToken(),
+            token_type: 'Bearer',
+            expires_in: 3600,
+            refresh_token: randomToken(),
+            scope: 'openid msso phone profile address email msso_register msso_client_register mas_messaging mas_storage mas_identity mas_identity_retrieve_users mas_identity_create_users mas_identity_update_users mas_identity_delete_users mas_identity_retrieve_groups'
+        });
+    },
+    'POST /connect/session/logout': function (request, response) {
+        send(response, 200, {session_status: 'logged out'});
+    },
+    'GET /openid/connect/v1/userinfo': function (request, response) {
+        send(response, 200, {sub: 'user1', name: 'Given1 Family1', given_name: 'Given1', family_name: 'Family1',
+            preferred_username: 'user1', email: 'user1@example.com', phone_number: '+10000000000'});
+    },
+    'GET /SCIM/MAS/v2/Users': function (request, response, query) {
+        var startIndex = Math.max(1, parseInt(query.startIndex, 10) || 1);
+        var itemsPerPage = Math.max(0, parseInt(query.count, 10) || options.payloadItems);
+        var resources = [];
+        for (var i = startIndex; i < startIndex + itemsPerPage && i <= options.scimTotal; i++) {
+            resources.push(scimUser(i));
+        }
+        send(response, 200, {
+            schemas: ['urn:ietf:params:scim:api:messages:2.0:ListResponse'],
+            totalResults: options.scimTotal,
+            startIndex: startIndex,
+            itemsPerPage: resources.length,
+            Resources: resources
+        }, {'Content-Type': 'application/scim+json'});
+    }
+};
+
+function register(request, response) {
+    if (!options.deviceCert) {
+        send(response, 500, {error: 'server_error', error_description: 'Start the mock gateway with --device-cert'});
+        return;
+    }
+    send(response, 200, fs.readFileSync(options.deviceCert, 'utf8'), {
+        'Content-Type': 'application/pkix-cert',
+        'mag-identifier': randomToken(),
+        'device-status': 'activated'
+    });
+}
+
+function protectedResource(request, response, query, path, body) {
+    if (!request.headers.authorization) {
+        send(response, 401, {error: 'invalid_request', error_description: 'Missing access token'},
+            {'x-ca-err': '990', 'WWW-Authenticate': 'Bearer'});
+        return;
+    }
+    var userMatch = /^\/SCIM\/MAS\/v2\/Users\/user(\d+)$/.exec(path);
+    if (userMatch && request.method === 'GET') {
+        send(response, 200, scimUser(Number(userMatch[1])), {'Content-Type': 'application/scim+json'});
+        return;
+    }
+    var items = [];
+    for (var i = 0; i < options.payloadItems; i++) {
+        items.push(item(i));
+    }
+    send(response, 200, {method: request.method, path: path, query: query, receivedBytes: body.length, items: items});
+}
+
+function handle(request, response) {
+    var parsed = url.parse(request.url, true);
+    var path = parsed.pathname;
+    var chunks = [];
+    request.on('data', function (chunk) {
+        chunks.push(chunk);
+    });
+    request.on('end', function () {
+        var body = Buffer.concat(chunks);
+        var originalEnd = response.end;
+        response.end = function () {
+            count(path, response.statusCode);
+            return originalEnd.apply(response, arguments);
+        };
+        if (path === '/mock/stats') {
+            send(response, 200, stats);
+            return;
+        }
+        if (path === '/mock/reset' && request.method === 'POST') {
+            stats = {started: new Date().toISOString(), requests: 0, injectedErrors: 0, paths: {}};
+            send(response, 200, {result: 'reset'});
+            return;
+        }
+        var delay = options.latency + Math.random() * options.jitter;
+        setTimeout(function () {
+            if (Math.random() < options.errorRate) {
+                stats.injectedErrors++;
+                send(response, options.errorStatus, {error: 'temporarily_unavailable', error_description: 'Injected error'});
+                return;
+            }
+            var handler = handlers[request.method + ' ' + path];
+            if (handler) {
+                handler(request, response, parsed.query, path, body);
+            } else {
+                protectedResource(request, response, parsed.query, path, body);
+            }
+        }, delay);
+    });
+}
+
+parseArguments(process.argv.slice(2));
+var server = options.tlsCert && options.tlsKey
+    ? https.createServer({cert: fs.readFileSync(options.tlsCert), key: fs.readFileSync(options.tlsKey)}, handle)
+    : http.createServer(handle);
+server.listen(options.port, function () {
+    console.log('Mock gateway listening on ' + (options.tlsCert ? 'https' : 'http') + '://0.0.0.0:' + options.port);
+});
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016 CA, Inc. All rights reserved.
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ *
+ */
+
+/*
+ * Short strings decode faster by hand than through TextDecoder, which has a fixed cost per call.
+ */
+var TEXT_DECODER_MIN_LENGTH = 48;
+var textDecoder = typeof TextDecoder !== "undefined" ? new TextDecoder("utf-8") : null;
+
+var decodeText = function(bytes, offset, length) {
+    if (textDecoder && length >= TEXT_DECODER_MIN_LENGTH) {
+        return textDecoder.decode(bytes.subarray(offset, offset + length));
+    }
+    var end = offset + length;
+    var text = "";
+    while (offset < end) {
+        var c = bytes[offset++];
+        if (c >= 0x80) {
+            if (c < 0xe0) {
+                c = (c & 0x1f) << 6 | bytes[offset++] & 0x3f;
+            } else if (c < 0xf0) {
+                c = (c & 0x0f) << 12 | (bytes[offset++] & 0x3f) << 6 | bytes[offset++] & 0x3f;
+            } else {
+                c = (c & 0x07) << 18 | (bytes[offset++] & 0x3f) << 12 | (bytes[offset++] & 0x3f) << 6 | bytes[offset++] & 0x3f;
+                c -= 0x10000;
+                text += String.fromCharCode(0xd800 | c >> 10);
+                c = 0xdc00 | c & 0x3ff;
+            }
+        }
+        text += String.fromCharCode(c);
+    }
+    return text;
+};
+
+var decodeHalf = function(half) {
+    var exponent = half >> 10 & 0x1f;
+    var mantissa = half & 0x3ff;
+    var value;
+    if (exponent === 0) {
+        value = mantissa * Math.pow(2, -24);
+    } else if (exponent === 0x1f) {
+        value = mantissa === 0 ? Infinity : NaN;
+    } else {
+        value = (mantissa + 1024) * Math.pow(2, exponent - 25);
+    }
+    return half & 0x8000 ? -value : value;
+};
+
+/**
+* @class MASPluginCbor
+* @hideconstructor
+* @classdesc Decoder of the CBOR (RFC 7049) results the native plugin sends when a request is made with the <i>{"encoding":"cbor"}</i> option. The plugin functions decode such results themselves, the decoder is exposed for results kept as an ArrayBuffer.
+* <table>
+*	<tr bgcolor="#D3D3D3"><th>Sample API usage</th></tr>
+*	<tr><td><i>var result = MASPluginCbor.decode(arrayBuffer);</i></td></tr>
+* </table>
+*/
+var MASPluginCbor = {
+
+	/**
+	* Decodes a CBOR item to the matching JavaScript value: maps become objects, byte strings Uint8Arrays. Tags are skipped. Currently supported on Android.
+	* @memberOf MASPluginCbor
+	* @param {ArrayBuffer} buffer The encoded item.
+	* @returns {*} The decoded value.
+	*/
+    decode: function(buffer) {
+        var bytes = new Uint8Array(buffer);
+        var view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+        var offset = 0;
+
+        var readArgument = function(info) {
+            if (info < 24) {
+                return info;
+            }
+            var value;
+            switch (info) {
+                case 24:
+                    value = view.getUint8(offset);
+                    offset += 1;
+                    return value;
+                case 25:
+                    value = view.getUint16(offset);
+                    offset += 2;
+                    return value;
+                case 26:
+                    value = view.getUint32(offset);
+                    offset += 4;
+                    return value;
+                case 27:
+                    // Exact up to 2^53, as any JavaScript number
+                    value = view.getUint32(offset) * 4294967296 + view.getUint32(offset + 4);
+                    offset += 8;
+                    return value;
+                default:
+                    throw new Error("Unsupported CBOR length encoding " + info + " at " + (offset - 1));
+            }
+        };
+
+        var readItem = function() {
+            if (offset >= bytes.length) {
+                throw new Error("Truncated CBOR data");
+            }
+            var initial = bytes[offset++];
+            var major = initial >> 5;
+            var info = initial & 0x1f;
+            var length, value, i;
+            switch (major) {
+                case 0:
+                    return readArgument(info);
+                case 1:
+                    return -1 - readArgument(info);
+                case 2:
+                    length = readArgument(info);
+                    if (offset + length > bytes.length) {
+                        throw new Error("Truncated CBOR data");
+                    }
+                    value = bytes.slice(offset, offset + length);
+                    offset += length;
+                    return value;
+                case 3:
+                    length = readArgument(info);
+                    if (offset + length > bytes.length) {
+                        throw new Error("Truncated CBOR data");
+                    }
+                    value = decodeText(bytes, offset, length);
+                    offset += length;
+                    return value;
+                case 4:
+                    length = readArgument(info);
+                    value = new Array(length);
+                    for (i = 0; i < length; i++) {
+                        value[i] = readItem();
+                    }
+                    return value;
+                case 5:
+                    length = readArgument(info);
+                    value = {};
+                    for (i = 0; i < length; i++) {
+                        var key = readItem();
+                        value[key] = readItem();
+                    }
+                    return value;
+                case 6:
+                    readArgument(info);
+                    return readItem();
+                default:
+                    switch (info) {
+                        case 20:
+                            return false;
+                        case 21:
+                            return true;
+                        case 22:
+                            return null;
+                        case 23:
+                            return undefined;
+                        case 25:
+                            value = decodeHalf(view.getUint16(offset));
+                            offset += 2;
+                            return value;
+                        case 26:
+                            value = view.getFloat32(offset);
+                            offset += 4;
+                            return value;
+                        case 27:
+                            value = view.getFloat64(offset);
+                            offset += 8;
+                            return value;
+                        default:
+                            throw new Error("Unsupported CBOR simple value " + info + " at " + (offset - 1));
+                    }
+            }
+        };
+
+        var result = readItem();
+        if (offset !== bytes.length) {
+            throw new Error("Unexpected data after the CBOR item at " + offset);
+        }
+        return result;
+    }
+};
+
+module.exports = MASPluginCbor;
@@ -59,6 +59,8 @@ var MASPluginConstants = {
 	 * @property {number} MASRequestResponseTypeTextPlain Plain Text.
 	 * @property {number} MASRequestResponseTypeWwwFormUrlEncoded Standard WWW Form URL encoding.
 	 * @property {number} MASRequestResponseTypeXml Standard XML encoding.
+	 * @property {number} MASRequestResponseTypeBinary Raw bytes, the response body is delivered as an ArrayBuffer. Currently supported on Android as a response type.
+	 * @property {number} MASRequestResponseTypeFile A local file streamed as the request body of putToPath and postToPath. The parametersInfo are <i>{fileUri, contentType, multipart}</i> where the optional multipart object <i>{name, fileName, fields}</i> wraps the file in a multipart/form-data envelope. Currently supported on Android as a request type.
 	 * @property {number} MASRequestResponseTypeCount The total number of supported types.
  	 */
     MASRequestResponseType: {
@@ -68,7 +70,23 @@ var MASPluginConstants = {
      	MASRequestResponseTypeTextPlain: 2,
      	MASRequestResponseTypeWwwFormUrlEncoded: 3,
      	MASRequestResponseTypeXml: 4,
-     	MASRequestResponseTypeCount: 5
+     	MASRequestResponseTypeBinary: 5,
+     	MASRequestResponseTypeFile: 6,
+     	MASRequestResponseTypeCount: 7
+    },
+
+	 /**
+ 	 * The constant which indicates the scheduling priority of a request sent to the Gateway.
+	 * @memberOf MASPluginConstants
+	 * @typedef {Object} MASRequestPriority
+	 * @property {number} MASRequestPriorityInteractive A request the user is waiting on.
+	 * @property {number} MASRequestPriorityNormal The default priority.
+	 * @property {number} MASRequestPriorityBackground A request nobody is waiting on, such as a background sync.
+ 	 */
+    MASRequestPriority: {
+     	MASRequestPriorityInteractive: 0,
+     	MASRequestPriorityNormal: 1,
+     	MASRequestPriorityBackground: 2
     },
 	
 	 /**
@@ -4,6 +4,7 @@
  * of the MIT license. See the LICENSE file for details.
  *
  */
+var MASPluginCbor = require("./MASPluginCbor");
 
 /**
 * @class MASPluginDevice
@@ -134,9 +135,12 @@ var MASPluginDevice = function() {
 	* @instance
     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+    * @param {Object} options optional options. <i>{"encoding":"cbor"}</i> sends the attributes over the bridge encoded as CBOR. Currently supported on Android.
     */
-    this.getAttributes = function(successHandler,errorHandler){
-        return Cordova.exec(successHandler, errorHandler, "MASPluginDevice", "getAttributes", []);
+    this.getAttributes = function(successHandler,errorHandler,options){
+        return Cordova.exec(function(attributes) {
+            successHandler(attributes instanceof ArrayBuffer ? MASPluginCbor.decode(attributes) : attributes);
+        }, errorHandler, "MASPluginDevice", "getAttributes", options && options.encoding ? [options.encoding] : []);
     };
 }
 
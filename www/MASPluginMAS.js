@@ -5,10 +5,73 @@
  */
 var MASPluginUtils = require("./MASPluginUtils"),
     MASPluginConstants = require("./MASPluginConstants"),
-    MASPluginCallbacks = require("./MASPluginCallbacks");
+    MASPluginCallbacks = require("./MASPluginCallbacks"),
+    MASPluginCbor = require("./MASPluginCbor");
 
 var MASPluginUser = require("./MASPluginUser");
 
+var requestCount = 0;
+
+// Response types of the registered endpoints, the response handler needs them to shape binary responses
+var endpointResponseTypes = {};
+
+/*
+ * Copies the request options, except for the JavaScript callbacks, and adds the handle the request can be
+ * cancelled with.
+ */
+var withHandle = function(options) {
+    var result = {};
+    if (options) {
+        for (var name in options) {
+            if (options.hasOwnProperty(name) && typeof options[name] !== "function") {
+                result[name] = options[name];
+            }
+        }
+    }
+    result.handle = "mas-" + Date.now().toString(36) + "-" + (++requestCount);
+    return result;
+};
+
+/*
+ * The bridge sends an ArrayBuffer argument encoded in base64, flags a raw ArrayBuffer body so that the native side
+ * decodes it instead of sending the base64 text.
+ */
+var withRawBody = function(requestOptions, body) {
+    if (requestOptions.contentType && body instanceof ArrayBuffer) {
+        requestOptions.bodyEncoding = "base64";
+    }
+    return requestOptions;
+};
+
+/*
+ * Binary responses arrive as two arguments, the ArrayBuffer body and the headers, and file uploads report their
+ * progress and streamed responses their batches on the same callback, and results requested with the cbor encoding
+ * arrive as an ArrayBuffer. Wraps the success handler so that it receives the same result structure as for the other
+ * request and response types.
+ */
+var responseHandler = function(successHandler, responseType, progressHandler, batchHandler) {
+    return function(body, headers) {
+        if (body && body.type === "progress") {
+            if (progressHandler) {
+                progressHandler(body);
+            }
+        } else if (body && body.type === "batch") {
+            if (batchHandler) {
+                batchHandler(body);
+            }
+        } else if (responseType === MASPluginConstants.MASRequestResponseType.MASRequestResponseTypeBinary) {
+            successHandler({
+                "MASResponseInfoBodyInfoKey": body,
+                "MASResponseInfoHeaderInfoKey": headers
+            });
+        } else if (body instanceof ArrayBuffer) {
+            successHandler(MASPluginCbor.decode(body));
+        } else {
+            successHandler(body);
+        }
+    };
+};
+
 /**
 * @class MASPluginMAS
 * @hideconstructor
@@ -534,15 +597,16 @@ function(result){
     };
 
     /**
-     * Checks whether the Gateway is reachable or not.
+     * Checks whether the Gateway is reachable or not. On Android the answer comes from the last check while it is younger than the time to live set with setConnectivityPolicy.
 	 * @memberOf MASPluginMAS
 	 * @function gatewayIsReachable
 	 * @instance
      * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
      * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {boolean} forceRefresh optional, checks the Gateway even if the last check is still valid.
      */
-    this.gatewayIsReachable = function(successHandler, errorHandler) {
-        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "gatewayIsReachable", []);
+    this.gatewayIsReachable = function(successHandler, errorHandler, forceRefresh) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "gatewayIsReachable", [forceRefresh]);
     };
 
 	/**
@@ -567,6 +631,26 @@ function(result){
         return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "setSecurityConfiguration", [masSecurityConfiguration]);
     }
 
+    /**
+     * The optional request options of getFromPath, deleteFromPath, putToPath, postToPath and invokeEndpoint. Identical GET requests issued while one is in flight share its response, unless they carry one of the headers configured with setCoalescingOptOutHeaders. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @typedef {Object} MASRequestOptions
+	 * @property {MASPluginConstants.MASRequestPriority} priority Schedules the request ahead of or behind the others, for example <i>{"priority":MASPluginConstants.MASRequestPriority.MASRequestPriorityInteractive}</i> schedules it ahead of normal and background ones.
+	 * @property {boolean} retry <i>false</i> disables the retry of transient failures (502, 503, 504, 429 and network timeouts), which is enabled by default for GET, PUT and DELETE requests.
+	 * @property {boolean} cache <i>true</i> serves a GET response from the local response cache while it is fresh according to its Cache-Control or Expires headers, and revalidates it with the Gateway using its ETag or Last-Modified headers once it is stale.
+	 * @property {boolean} deferrable <i>true</i> stores a DELETE, PUT or POST request in the offline queue if the Gateway cannot be reached, the successHandler then receives <i>{"queued":true, "queueId":id}</i> and the outcome of the request is delivered to the setOfflineQueueListener listener once it is replayed.
+	 * @property {string} tag Groups the request for cancelByTag, for example <i>"search"</i>.
+	 * @property {number} timeoutMillis Fails the request if no response arrives within the timeout, for example <i>10000</i>.
+	 * @property {Array} fields Returns only the selected body fields, given as JSON Pointers or dot paths where "*" selects every array element, for example <i>["data.items.*.name", "/total"]</i>.
+	 * @property {Array} responseHeaders Returns only the selected response headers, for example <i>["ETag"]</i>. An empty array leaves the headers out.
+	 * @property {boolean} stream <i>true</i> parses a JSON response as it arrives and passes the elements of the array at streamPath, or of the document if it is an array, to batchHandler in batches of <i>{sequence, items}</i>. The successHandler then receives the rest of the document and the streamedCount, a document without an array at streamPath is received whole with a streamedCount of 0. Streamed requests are not retried, cached nor deferred.
+	 * @property {string} streamPath The path of the streamed array, for example <i>"Resources"</i>.
+	 * @property {number} streamBatchSize The number of streamed elements per batch, for example <i>100</i>.
+	 * @property {function} batchHandler The callback which receives the streamed batches.
+	 * @property {string} contentType Sends the parametersInfo of putToPath and postToPath, given as an already serialized string or as an ArrayBuffer, as the request body as is with that content type, without parsing nor serializing it again natively. For example <i>"application/json"</i>.
+	 * @property {string} encoding <i>"cbor"</i> sends the result over the bridge encoded as CBOR, which is more compact than JSON to transfer and to decode for large responses. The result is decoded before the successHandler is called, binary responses are not affected.
+     */
+
     /**
      * Invokes an API on the Gateway using the HTTP GET method.
 	 * @memberOf MASPluginMAS
@@ -580,9 +664,13 @@ function(result){
      * @param {MASPluginConstants.MASRequestResponseType} requestType specifies the request type of the request.<br>
      * @param {MASPluginConstants.MASRequestResponseType} responseType specifies the response type of the request
      * @param {boolean} isPublic specifies if the API being called is public or not
+     * @param {MASPluginMAS.MASRequestOptions} options optional request options.
+     * @returns {string} The handle of the request, to be passed to cancelRequest.
      */
-    this.getFromPath = function(successHandler, errorHandler, path, parametersInfo, headersInfo, requestType, responseType, isPublic) {
-        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "getFromPath", [path, parametersInfo, headersInfo, requestType, responseType, isPublic]);
+    this.getFromPath = function(successHandler, errorHandler, path, parametersInfo, headersInfo, requestType, responseType, isPublic, options) {
+        var requestOptions = withHandle(options);
+        Cordova.exec(responseHandler(successHandler, responseType, null, options && options.batchHandler), errorHandler, "MASPluginMAS", "getFromPath", [path, parametersInfo, headersInfo, requestType, responseType, isPublic, requestOptions]);
+        return requestOptions.handle;
     };
 
 
@@ -599,9 +687,13 @@ function(result){
      * @param {MASPluginConstants.MASRequestResponseType} requestType specifies the request type of the request.<br>
      * @param {MASPluginConstants.MASRequestResponseType} responseType specifies the response type of the request
      * @param {boolean} isPublic specifies if the API being called is public or not
+     * @param {MASPluginMAS.MASRequestOptions} options optional request options.
+     * @returns {string} The handle of the request, to be passed to cancelRequest.
      */
-    this.deleteFromPath = function(successHandler, errorHandler, path, parametersInfo, headersInfo, requestType, responseType, isPublic) {
-        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "deleteFromPath", [path, parametersInfo, headersInfo, requestType, responseType, isPublic]);
+    this.deleteFromPath = function(successHandler, errorHandler, path, parametersInfo, headersInfo, requestType, responseType, isPublic, options) {
+        var requestOptions = withHandle(options);
+        Cordova.exec(responseHandler(successHandler, responseType, null, options && options.batchHandler), errorHandler, "MASPluginMAS", "deleteFromPath", [path, parametersInfo, headersInfo, requestType, responseType, isPublic, requestOptions]);
+        return requestOptions.handle;
     };
 
 
@@ -618,9 +710,14 @@ function(result){
      * @param {MASPluginConstants.MASRequestResponseType} requestType specifies the request type of the request.<br>
      * @param {MASPluginConstants.MASRequestResponseType} responseType specifies the response type of the request
      * @param {boolean} isPublic specifies if the API being called is public or not
+     * @param {function} progressHandler optional callback that is invoked with <i>{bytesTransferred, totalBytes}</i> while a {@link MASPluginConstants.MASRequestResponseType}.MASRequestResponseTypeFile request body is uploaded.
+     * @param {MASPluginMAS.MASRequestOptions} options optional request options.
+     * @returns {string} The handle of the request, to be passed to cancelRequest.
      */
-    this.putToPath = function(successHandler, errorHandler, path, parametersInfo, headersInfo, requestType, responseType, isPublic) {
-        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "putToPath", [path, parametersInfo, headersInfo, requestType, responseType, isPublic]);
+    this.putToPath = function(successHandler, errorHandler, path, parametersInfo, headersInfo, requestType, responseType, isPublic, progressHandler, options) {
+        var requestOptions = withRawBody(withHandle(options), parametersInfo);
+        Cordova.exec(responseHandler(successHandler, responseType, progressHandler, options && options.batchHandler), errorHandler, "MASPluginMAS", "putToPath", [path, parametersInfo, headersInfo, requestType, responseType, isPublic, requestOptions]);
+        return requestOptions.handle;
     };
 
 
@@ -637,12 +734,207 @@ function(result){
      * @param {MASPluginConstants.MASRequestResponseType} requestType specifies the request type of the request.<br>
      * @param {MASPluginConstants.MASRequestResponseType} responseType specifies the response type of the request
      * @param {boolean} isPublic specifies if the API being called is public or not
+     * @param {function} progressHandler optional callback that is invoked with <i>{bytesTransferred, totalBytes}</i> while a {@link MASPluginConstants.MASRequestResponseType}.MASRequestResponseTypeFile request body is uploaded.
+     * @param {MASPluginMAS.MASRequestOptions} options optional request options.
+     * @returns {string} The handle of the request, to be passed to cancelRequest.
+     */
+
+    this.postToPath = function(successHandler, errorHandler, path, parametersInfo, headersInfo, requestType, responseType, isPublic, progressHandler, options) {
+        var requestOptions = withRawBody(withHandle(options), parametersInfo);
+        Cordova.exec(responseHandler(successHandler, responseType, progressHandler, options && options.batchHandler), errorHandler, "MASPluginMAS", "postToPath", [path, parametersInfo, headersInfo, requestType, responseType, isPublic, requestOptions]);
+        return requestOptions.handle;
+    };
+
+
+    /**
+     * Downloads the response of an HTTP GET call to the Gateway straight into a file, without passing the content through the JavaScript layer.
+     * Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function downloadFromPath
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked once the file is written, with <i>{path, size, contentType, MASResponseInfoHeaderInfoKey}</i>.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {string} path The API path which the user wants to access. For example, /protected/resource/report.pdf
+     * @param {Object} parametersInfo Query Parameters that is passed along with the request.
+     * @param {Object} headersInfo The HTTP Headers that is passed along with the request.
+     * @param {boolean} isPublic specifies if the API being called is public or not
+     * @param {string} fileName The name of the file to write.
+     * @param {string} directory "files" (default) to write to the application files directory or "cache" to write to its cache directory.
+     * @param {function} progressHandler optional callback that is invoked with <i>{bytesTransferred, totalBytes}</i> while the file is downloaded. totalBytes is -1 when unknown.
+     * @param {Object} options optional request options. The priority, tag and timeoutMillis {@link MASPluginMAS.MASRequestOptions} apply.
+     * @returns {string} The handle of the request, to be passed to cancelRequest.
+     */
+    this.downloadFromPath = function(successHandler, errorHandler, path, parametersInfo, headersInfo, isPublic, fileName, directory, progressHandler, options) {
+        var requestOptions = withHandle(options);
+        Cordova.exec(
+            function(result) {
+                if (result.type === "progress") {
+                    if (progressHandler) {
+                        progressHandler(result);
+                    }
+                } else {
+                    successHandler(result);
+                }
+            },
+            errorHandler, "MASPluginMAS", "downloadFromPath", [path, parametersInfo, headersInfo, isPublic, fileName, directory, requestOptions]);
+        return requestOptions.handle;
+    };
+
+    /**
+     * Pages through a collection on the Gateway with HTTP GET requests. SCIM lists ({@link MASPluginConstants.MASRequestResponseType}.MASRequestResponseTypeScimJson) are paged with their startIndex and itemsPerPage, other collections by following the rel="next" link of the Link header. The next page is requested while the current one is delivered.
+     * Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function getPagesFromPath
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked once paging ends, with <i>{pageCount, itemCount, exhausted, stopped}</i>. exhausted tells if the last page was reached, stopped if paging was stopped with cancelRequest.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {string} path The API path of the collection. For example, /SCIM/MAS/v2/Users
+     * @param {Object} parametersInfo Query Parameters of the first request.
+     * @param {Object} headersInfo The HTTP Headers passed along with every request.
+     * @param {MASPluginConstants.MASRequestResponseType} responseType specifies the response type of the requests
+     * @param {boolean} isPublic specifies if the API being called is public or not
+     * @param {function} pageHandler callback that is invoked with every page, in order: <i>{pageIndex, itemCount, MASResponseInfoBodyInfoKey, MASResponseInfoHeaderInfoKey}</i>.
+     * @param {Object} options optional paging options. <i>{"itemsPerPage":50}</i> sets the SCIM page size, <i>{"maxPages":10, "maxItems":500}</i> stop paging once the limit is reached, <i>{"prefetch":false}</i> requests every page only after the previous one is delivered. The priority, retry, tag, fields and responseHeaders {@link MASPluginMAS.MASRequestOptions} apply, timeoutMillis applies to every page.
+     * @returns {string} The handle of the paging, to be passed to cancelRequest to stop it.
+     */
+    this.getPagesFromPath = function(successHandler, errorHandler, path, parametersInfo, headersInfo, responseType, isPublic, pageHandler, options) {
+        var requestOptions = withHandle(options);
+        Cordova.exec(
+            function(result) {
+                if (result.type === "page") {
+                    if (pageHandler) {
+                        pageHandler(result);
+                    }
+                } else {
+                    successHandler(result);
+                }
+            },
+            errorHandler, "MASPluginMAS", "getPagesFromPath", [path, parametersInfo, headersInfo, responseType, isPublic, requestOptions]);
+        return requestOptions.handle;
+    };
+
+    /**
+     * Registers a named Gateway endpoint, parsed and validated once natively, so that invokeEndpoint only sends the values which change from call to call. Registering a name again replaces the endpoint. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function registerEndpoint
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {string} name The name of the endpoint.
+     * @param {Object} endpoint <i>{method, path, headers, requestType, responseType, isPublic, options}</i>. The method is GET (default), DELETE, PUT or POST. The path may hold {placeholders} replaced on every call, for example <i>/protected/users/{userId}/orders</i>. The headers are sent with every call, the options are {@link MASPluginMAS.MASRequestOptions}, such as cache, retry, priority or fields.
+	 * @example
+	 * var MAS = new MASPlugin.MAS();
+	 * MAS.registerEndpoint(successHandler, errorHandler, "userOrders", {"path": "/protected/users/{userId}/orders", "headers": {"Accept": "application/json"}, "options": {"cache": true}});
+	 * MAS.invokeEndpoint(ordersHandler, errorHandler, "userOrders", {"userId": 42}, {"status": "open"});
+     */
+    this.registerEndpoint = function(successHandler, errorHandler, name, endpoint) {
+        var responseType = endpoint && endpoint.responseType !== undefined ? endpoint.responseType : MASPluginConstants.MASRequestResponseType.MASRequestResponseTypeJson;
+        Cordova.exec(function(result) {
+            endpointResponseTypes[name] = responseType;
+            successHandler(result);
+        }, errorHandler, "MASPluginMAS", "registerEndpoint", [name, endpoint]);
+    };
+
+    /**
+     * Removes an endpoint registered with registerEndpoint. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function unregisterEndpoint
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked with true if the endpoint was registered.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {string} name The name of the endpoint.
+     */
+    this.unregisterEndpoint = function(successHandler, errorHandler, name) {
+        delete endpointResponseTypes[name];
+        Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "unregisterEndpoint", [name]);
+    };
+
+    /**
+     * Invokes an endpoint registered with registerEndpoint. The result is the same as for getFromPath. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function invokeEndpoint
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {string} name The name of the endpoint.
+     * @param {Object} vars The values of the path placeholders, encoded as path segments.
+     * @param {Object} body The query parameters of GET and DELETE endpoints, the body of PUT and POST ones, as for getFromPath and postToPath. With the contentType option, a string or ArrayBuffer body is sent as is.
+     * @param {MASPluginMAS.MASRequestOptions} options optional request options, which override the registered ones.
+     * @returns {string} The handle of the request, to be passed to cancelRequest.
      */
+    this.invokeEndpoint = function(successHandler, errorHandler, name, vars, body, options) {
+        var requestOptions = withRawBody(withHandle(options), body);
+        Cordova.exec(responseHandler(successHandler, endpointResponseTypes[name], options && options.progressHandler, options && options.batchHandler), errorHandler, "MASPluginMAS", "invokeEndpoint", [name, vars, body, requestOptions]);
+        return requestOptions.handle;
+    };
 
-    this.postToPath = function(successHandler, errorHandler, path, parametersInfo, headersInfo, requestType, responseType, isPublic) {
-        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "postToPath", [path, parametersInfo, headersInfo, requestType, responseType, isPublic]);
+    /**
+     * Invokes several APIs on the Gateway with a single bridge call. The requests are sent concurrently.
+     * Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function invokeBatch
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked with an array of <i>{index, result}</i> or <i>{index, error}</i> objects, in the order of the requests. If streamResults is true it is invoked once per request as soon as it completes instead.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {Array} requests The requests to send. Each one is an object with the same information as the getFromPath, deleteFromPath, putToPath and postToPath arguments. Its {@link MASPluginMAS.MASRequestOptions} apply as for a single request, except stream and deferrable.<table><tr><th>Example</th></tr><tr><td>{<br>&nbsp;&nbsp;"method":"GET",<br>&nbsp;&nbsp;"path":"/protected/resource/products",<br>&nbsp;&nbsp;"parameters":{"operation":"listProducts"},<br>&nbsp;&nbsp;"headers":{},<br>&nbsp;&nbsp;"requestType":0,<br>&nbsp;&nbsp;"responseType":0,<br>&nbsp;&nbsp;"isPublic":false,<br>&nbsp;&nbsp;"options":{"priority":2}<br>}</td></tr></table>
+     * @param {boolean} streamResults specifies if each result is delivered as soon as it is available rather than all at once.
+     */
+    this.invokeBatch = function(successHandler, errorHandler, requests, streamResults) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "invokeBatch", [requests, streamResults]);
     };
 
+    /**
+     * Cancels a request in flight. Its errorHandler is invoked with a cancellation error.
+	 * @memberOf MASPluginMAS
+	 * @function cancelRequest
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked with true if the request was cancelled, false if it had already ended.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {string} handle The handle returned by getFromPath, deleteFromPath, putToPath or postToPath.
+     */
+    this.cancelRequest = function(successHandler, errorHandler, handle) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "cancelRequest", [handle]);
+    };
+
+    /**
+     * Cancels every request in flight issued with the tag option.
+     * Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function cancelByTag
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked with the number of cancelled requests.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {string} tag The tag of the requests.
+     */
+    this.cancelByTag = function(successHandler, errorHandler, tag) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "cancelByTag", [tag]);
+    };
+
+    /**
+     * Cancels every request in flight.
+     * Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function cancelAll
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked with the number of cancelled requests.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.cancelAll = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "cancelAll", []);
+    };
+
+    /**
+     * Returns the requests in flight: <i>{outstandingCount, outstandingByTag, completedCount, cancelledCount, timedOutCount}</i>.
+     * Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function getOutstandingRequests
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.getOutstandingRequests = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "getOutstandingRequests", []);
+    };
 
     /**
      * Returns current value of the {@link MASPluginConstants.MASState}.  The value can be used to determine the current state of the SDK.
@@ -734,6 +1026,335 @@ function(result){
     this.isIdTokenValidationEnabled = function(successHandler,errorHandler){
         return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "isIdTokenValidationEnabled",[]);
     };
+
+    /**
+     * Fetches the execution statistics of the native plugin: the depth of the background queue used by blocking
+     * actions such as start or signWithClaims, the average and maximum time spent waiting in it, the Java and native
+     * heap usage of the application, and the number of invocations of every action. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function getExecutionStats
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.getExecutionStats = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "getExecutionStats", []);
+    };
+
+    /**
+     * Fetches the metrics of a native plugin: for every action its latency from invocation to final result and its error count, for every Gateway path template (numeric and identifier segments replaced with {id}) its request latency, and the error counts by errorCode. Latencies are given as <i>{count, meanMillis, maxMillis, p50Millis, p90Millis, p99Millis}</i>. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function getMetrics
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked with <i>{actions, paths, errors}</i>.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {string} service optional name of the plugin, "MASPluginMAS" (default), "MASPluginUser", "MASPluginDevice" or "MASPluginApplication".
+     */
+    this.getMetrics = function(successHandler, errorHandler, service) {
+        return Cordova.exec(successHandler, errorHandler, service || "MASPluginMAS", "getMetrics", []);
+    };
+
+    /**
+     * Clears the metrics of a native plugin. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function resetMetrics
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {string} service optional name of the plugin, "MASPluginMAS" (default), "MASPluginUser", "MASPluginDevice" or "MASPluginApplication".
+     */
+    this.resetMetrics = function(successHandler, errorHandler, service) {
+        return Cordova.exec(successHandler, errorHandler, service || "MASPluginMAS", "resetMetrics", []);
+    };
+
+    /**
+     * Enables or disables the tracing of the request lifecycle: the action invocations, their wait in the background queue, the scheduling and execution of the Gateway requests, the login and OTP prompts and the delivery of the results to JavaScript. Enabling clears the spans recorded so far. Spans are kept in a bounded buffer, the oldest ones being overwritten. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function setTracingEnabled
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {boolean} enabled true to enable tracing, false to disable it.
+     * @param {number} capacity optional number of spans kept, 4096 by default.
+     */
+    this.setTracingEnabled = function(successHandler, errorHandler, enabled, capacity) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "setTracingEnabled", [enabled, capacity || 0]);
+    };
+
+    /**
+     * Writes the recorded spans to a file of the application cache directory in the Chrome trace-event format, which chrome://tracing or Perfetto open. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function dumpTrace
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked with <i>{path, spanCount}</i>.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {string} fileName optional name of the file, a timestamped name by default.
+     */
+    this.dumpTrace = function(successHandler, errorHandler, fileName) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "dumpTrace", [fileName || null]);
+    };
+
+    /**
+     * Counts the native allocations of marshalling the arguments of a Gateway invocation into a request, without sending it. Meant for benchmarks, the counts come from the allocation counting of the Android runtime. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function countRequestAllocations
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked with <i>{iterations, allocationsPerRequest, bytesPerRequest}</i>.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {string} method The HTTP method, "GET", "DELETE", "PUT" or "POST".
+     * @param {string} path The API path, as given to getFromPath.
+     * @param {Object} parametersInfo The parameters of the request.
+     * @param {Object} headersInfo The HTTP Headers of the request.
+     * @param {MASPluginConstants.MASRequestResponseType} requestType specifies the request type of the request.
+     * @param {MASPluginConstants.MASRequestResponseType} responseType specifies the response type of the request.
+     * @param {number} iterations optional number of requests marshalled, 1 by default.
+     */
+    this.countRequestAllocations = function(successHandler, errorHandler, method, path, parametersInfo, headersInfo, requestType, responseType, iterations) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "countRequestAllocations", [method, [path, parametersInfo, headersInfo, requestType, responseType, false, null], iterations || 1]);
+    };
+
+    /**
+     * Fetches the statistics of the response cache used by getFromPath: hit, miss, revalidation and eviction counts
+     * as well as its memory and disk usage. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function getResponseCacheStats
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.getResponseCacheStats = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "getResponseCacheStats", []);
+    };
+
+    /**
+     * Removes every response from the response cache used by getFromPath. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function clearResponseCache
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.clearResponseCache = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "clearResponseCache", []);
+    };
+
+    /**
+     * Fetches how many identical GET requests shared a request already in flight instead of invoking the Gateway,
+     * in total and per method and path. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function getCoalescingStats
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.getCoalescingStats = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "getCoalescingStats", []);
+    };
+
+    /**
+     * Sets the request headers which opt a GET request out of sharing an identical request in flight.
+     * By default these are Cache-Control and Pragma. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function setCoalescingOptOutHeaders
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {Array} headers The names of the headers, case insensitive.
+     */
+    this.setCoalescingOptOutHeaders = function(successHandler, errorHandler, headers) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "setCoalescingOptOutHeaders", [headers]);
+    };
+
+    /**
+     * Fetches the statistics of the request scheduler: the requests in flight in total and per host, and for every
+     * {@link MASPluginConstants.MASRequestPriority} class its queue depth and the average and maximum time its
+     * requests waited before being sent. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function getSchedulerStats
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.getSchedulerStats = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "getSchedulerStats", []);
+    };
+
+    /**
+     * Sets how many requests the scheduler keeps in flight, in total and per host. The defaults are 8 and 4.
+     * Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function setSchedulerLimits
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {number} maxConcurrent The maximum number of requests in flight.
+     * @param {number} maxPerHost The maximum number of requests in flight to the same host.
+     */
+    this.setSchedulerLimits = function(successHandler, errorHandler, maxConcurrent, maxPerHost) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "setSchedulerLimits", [maxConcurrent, maxPerHost]);
+    };
+
+    /**
+     * Sets how transient failures of gateway requests are retried: exponential backoff with jitter, or the delay of the
+     * Retry-After response header when it does not exceed maxRetryAfterMillis. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function setRetryPolicy
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked with the resulting policy.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {Object} policy The values to change.<table><tr><th>Example</th></tr><tr><td>{<br>&nbsp;&nbsp;"maxAttempts":3,<br>&nbsp;&nbsp;"baseDelayMillis":250,<br>&nbsp;&nbsp;"maxDelayMillis":8000,<br>&nbsp;&nbsp;"maxRetryAfterMillis":30000<br>}</td></tr></table>
+     */
+    this.setRetryPolicy = function(successHandler, errorHandler, policy) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "setRetryPolicy", [policy]);
+    };
+
+    /**
+     * Sets after how many consecutive transient failures the circuit of a host opens, and for how long requests to
+     * that host then fail fast before a probe request is let through. The defaults are 5 and 30000. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function setCircuitBreakerPolicy
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {number} failureThreshold The number of consecutive failures which opens the circuit.
+     * @param {number} openMillis The time the circuit stays open.
+     */
+    this.setCircuitBreakerPolicy = function(successHandler, errorHandler, failureThreshold, openMillis) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "setCircuitBreakerPolicy", [failureThreshold, openMillis]);
+    };
+
+    /**
+     * Fetches the circuit breaker state of every host which had a transient failure: <i>closed</i>, <i>open</i> or
+     * <i>halfOpen</i>, its consecutive failure count and, when open, the time left before a probe request is allowed.
+     * Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function getCircuitBreakerState
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.getCircuitBreakerState = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "getCircuitBreakerState", []);
+    };
+
+    /**
+     * Closes the circuit of every host. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function resetCircuitBreakers
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.resetCircuitBreakers = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "resetCircuitBreakers", []);
+    };
+
+    /**
+     * Registers the listener of the offline queue. Requests made with the <i>deferrable</i> option while the Gateway
+     * was unreachable are stored on the device and replayed in order once it is reachable again. The listener is
+     * invoked once per replayed request with <i>{queueId, method, path, result}</i> or <i>{queueId, method, path, error}</i>.
+     * Registering the listener also starts a replay. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function setOfflineQueueListener
+	 * @instance
+     * @param {function} listener The callback invoked for every replayed request.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.setOfflineQueueListener = function(listener, errorHandler) {
+        return Cordova.exec(listener, errorHandler, "MASPluginMAS", "setOfflineQueueListener", []);
+    };
+
+    /**
+     * Fetches the requests of the offline queue in replay order. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function getOfflineQueue
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked with an array of <i>{id, method, args}</i> objects.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.getOfflineQueue = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "getOfflineQueue", []);
+    };
+
+    /**
+     * Removes a request from the offline queue without sending it. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function removeFromOfflineQueue
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked with false if the request was not queued.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {number} queueId The id the request was queued with.
+     */
+    this.removeFromOfflineQueue = function(successHandler, errorHandler, queueId) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "removeFromOfflineQueue", [queueId]);
+    };
+
+    /**
+     * Starts replaying the offline queue. The replay stops at the first request which cannot reach the Gateway.
+     * Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function replayOfflineQueue
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.replayOfflineQueue = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "replayOfflineQueue", []);
+    };
+
+    /**
+     * Sets the maximum number of queued requests replayed per second. The default is 2. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function setOfflineQueueReplayRate
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {number} requestsPerSecond The replay rate.
+     */
+    this.setOfflineQueueReplayRate = function(successHandler, errorHandler, requestsPerSecond) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "setOfflineQueueReplayRate", [requestsPerSecond]);
+    };
+
+    /**
+     * Registers the connectivity listener, replacing the previous one, and starts monitoring the network and the Gateway.
+     * The listener is invoked with <i>{networkAvailable, gatewayReachable, latencyMillis, ageMillis}</i> right away, whenever
+     * the network comes and goes, and after every Gateway check with its measured round trip time. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function setConnectivityListener
+	 * @instance
+     * @param {function} listener The callback invoked with the connectivity state.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.setConnectivityListener = function(listener, errorHandler) {
+        return Cordova.exec(listener, errorHandler, "MASPluginMAS", "setConnectivityListener", []);
+    };
+
+    /**
+     * Stops the connectivity monitoring started by setConnectivityListener. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function removeConnectivityListener
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     */
+    this.removeConnectivityListener = function(successHandler, errorHandler) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "removeConnectivityListener", []);
+    };
+
+    /**
+     * Sets how long a Gateway check answers gatewayIsReachable and how often the Gateway is checked while a
+     * connectivity listener is registered. The defaults are 30000 and 120000. Currently supported on Android.
+	 * @memberOf MASPluginMAS
+	 * @function setConnectivityPolicy
+	 * @instance
+     * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
+     * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+     * @param {number} ttlMillis The time to live of a Gateway check.
+     * @param {number} probeIntervalMillis The interval between Gateway checks.
+     */
+    this.setConnectivityPolicy = function(successHandler, errorHandler, ttlMillis, probeIntervalMillis) {
+        return Cordova.exec(successHandler, errorHandler, "MASPluginMAS", "setConnectivityPolicy", [ttlMillis, probeIntervalMillis]);
+    };
 };
 
 module.exports = MASPluginMAS;
\ No newline at end of file
@@ -4,6 +4,8 @@
  * of the MIT license. See the LICENSE file for details.
  *
  */
+var MASPluginCbor = require("./MASPluginCbor");
+
 /**
 * @class MASPluginUser
 * @hideconstructor
@@ -239,6 +241,7 @@ MASPluginUser.sharedCurrUser;
  * @memberOf MASPluginUser
  * @param {successCallbackFunction} successHandler user defined success callback that is invoked on success scenario.
  * @param {errorCallbackFunction} errorHandler user defined error callback that is invoked on failure scenario.
+ * @param {Object} options optional options. <i>{"encoding":"cbor"}</i> sends the user over the bridge encoded as CBOR. Currently supported on Android.
  * @example
 	<caption>For instance, to access the username field of the logged in user (and to see if the session is locked) you must call this API as follows</caption>
 
@@ -256,8 +259,11 @@ MASPluginUser.currentUser(
 );
  */
 
- MASPluginUser.currentUser = function(successHandler, errorHandler) {
+ MASPluginUser.currentUser = function(successHandler, errorHandler, options) {
     Cordova.exec(function(masPluginUser) {
+        if (masPluginUser instanceof ArrayBuffer) {
+            masPluginUser = MASPluginCbor.decode(masPluginUser);
+        }
         if (typeof(MASPluginUser.sharedCurrUser === 'undefined')){
             MASPluginUser.sharedCurrUser = new MASPluginUser(masPluginUser);
         }else {
@@ -265,7 +271,7 @@ MASPluginUser.currentUser(
             MASPluginUser.sharedCurrUser = new MASPluginUser(masPluginUser);
         }
         successHandler(MASPluginUser.sharedCurrUser);
-    }, errorHandler, "MASPluginUser", "currentUser");
+    }, errorHandler, "MASPluginUser", "currentUser", options && options.encoding ? [options.encoding] : []);
 };
 
  /**